@@ -0,0 +1,220 @@
+package de.maxikg.mongowg;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.mongodb.Block;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import de.maxikg.mongowg.utils.ConcurrentUtils;
+import de.maxikg.mongowg.utils.OperationResultCallback;
+import org.bson.Document;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates and verifies the indexes which are required by {@link RegionStorageAdapter}.
+ */
+public class IndexManager {
+
+    private static final Logger LOGGER = Logger.getLogger(IndexManager.class.getName());
+
+    /**
+     * Unique index on world and region name. Every write filters on both fields and {@code loadAll} filters on the
+     * world, which is the prefix of this index. Therefore no separate world index is needed.
+     */
+    public static final IndexDefinition WORLD_NAME_INDEX = new IndexDefinition("world_name", new Document("world", 1).append("name", 1), true);
+
+    private final MongoCollection<Document> collection;
+    private final List<IndexDefinition> indexes;
+
+    /**
+     * Constructor.
+     *
+     * @param collection The {@link MongoCollection} on which the indexes should exist
+     * @param indexes The expected indexes
+     */
+    public IndexManager(MongoCollection<Document> collection, List<IndexDefinition> indexes) {
+        this.collection = Preconditions.checkNotNull(collection, "collection must be not null.");
+        this.indexes = ImmutableList.copyOf(Preconditions.checkNotNull(indexes, "indexes must be not null."));
+    }
+
+    /**
+     * Checks the existing indexes against the expected ones and builds missing indexes in the background. Indexes
+     * which exists with a different definition are reported but not dropped.
+     */
+    public void ensureIndexes() {
+        List<Document> existing = listIndexes();
+        for (final IndexDefinition index : indexes) {
+            Document match = null;
+            for (Document document : existing) {
+                if (index.getName().equals(document.getString("name")) || keysEqual(index.getKeys(), (Document) document.get("key"))) {
+                    match = document;
+                    break;
+                }
+            }
+
+            if (match == null) {
+                LOGGER.info("Building index " + index.getName() + " on " + RegionStorageAdapter.COLLECTION_NAME + " in background.");
+                collection.createIndex(
+                        index.getKeys(),
+                        new IndexOptions().name(index.getName()).unique(index.isUnique()).background(true),
+                        new SingleResultCallback<String>() {
+                            @Override
+                            public void onResult(String name, Throwable throwable) {
+                                if (throwable != null)
+                                    LOGGER.log(Level.SEVERE, "Cannot build index " + index.getName() + ". Make sure that there are no duplicate regions.", throwable);
+                                else
+                                    LOGGER.info("Index " + name + " is ready.");
+                            }
+                        }
+                );
+            } else if (!index.matches(match)) {
+                LOGGER.warning("Index " + match.getString("name") + " does not match its expected definition " + index
+                        + ". Please drop it, so it can be rebuilt on next startup.");
+            }
+        }
+    }
+
+    /**
+     * Logs the usage statistics of every index of the collection. Requires MongoDB 3.2 or newer.
+     */
+    public void reportUsage() {
+        final CountDownLatch waiter = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        collection.aggregate(ImmutableList.of(new Document("$indexStats", new Document()))).forEach(
+                new Block<Document>() {
+                    @Override
+                    public void apply(Document document) {
+                        Document accesses = (Document) document.get("accesses");
+                        LOGGER.info("Index " + document.getString("name") + " was used " + accesses.get("ops") + " times since " + accesses.get("since") + ".");
+                    }
+                },
+                OperationResultCallback.<Void>create(error, waiter)
+        );
+        ConcurrentUtils.safeAwait(waiter);
+        Throwable realError = error.get();
+        if (realError != null)
+            LOGGER.log(Level.INFO, "Index usage statistics are not available.", realError);
+    }
+
+    private List<Document> listIndexes() {
+        final CountDownLatch waiter = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Document> result = Lists.newArrayList();
+        collection.listIndexes().into(result, OperationResultCallback.<List<Document>>create(error, waiter));
+        ConcurrentUtils.safeAwait(waiter);
+        Throwable realError = error.get();
+        if (realError != null)
+            throw Throwables.propagate(realError);
+        return result;
+    }
+
+    private static boolean keysEqual(Document expected, Document actual) {
+        if (actual == null || expected.size() != actual.size())
+            return false;
+        Iterator<Map.Entry<String, Object>> actualIterator = actual.entrySet().iterator();
+        for (Map.Entry<String, Object> entry : expected.entrySet()) {
+            Map.Entry<String, Object> other = actualIterator.next();
+            if (!entry.getKey().equals(other.getKey()))
+                return false;
+            Object value = entry.getValue();
+            Object otherValue = other.getValue();
+            if (value instanceof Number && otherValue instanceof Number) {
+                if (((Number) value).doubleValue() != ((Number) otherValue).doubleValue())
+                    return false;
+            } else if (!Objects.equal(value, otherValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a {@code IndexManager} for the regions collection.
+     *
+     * @param database The {@link MongoDatabase} which contains the regions
+     * @return The {@code IndexManager}
+     */
+    public static IndexManager forRegions(MongoDatabase database) {
+        return new IndexManager(database.getCollection(RegionStorageAdapter.COLLECTION_NAME), ImmutableList.of(WORLD_NAME_INDEX));
+    }
+
+    /**
+     * The expected definition of an index.
+     */
+    public static class IndexDefinition {
+
+        private final String name;
+        private final Document keys;
+        private final boolean unique;
+
+        /**
+         * Constructor.
+         *
+         * @param name The name of the index
+         * @param keys The keys of the index
+         * @param unique Whether the index is unique
+         */
+        public IndexDefinition(String name, Document keys, boolean unique) {
+            this.name = Preconditions.checkNotNull(name, "name must be not null.");
+            this.keys = Preconditions.checkNotNull(keys, "keys must be not null.");
+            this.unique = unique;
+        }
+
+        /**
+         * Returns the name of the index.
+         *
+         * @return The name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the keys of the index.
+         *
+         * @return The keys
+         */
+        public Document getKeys() {
+            return keys;
+        }
+
+        /**
+         * Returns whether the index is unique.
+         *
+         * @return {@code true} if unique, otherwise {@code false}
+         */
+        public boolean isUnique() {
+            return unique;
+        }
+
+        /**
+         * Checks if the given index information, as returned by {@code listIndexes}, matches this definition.
+         *
+         * @param index The index information
+         * @return {@code true} if keys and uniqueness are equal, otherwise {@code false}
+         */
+        public boolean matches(Document index) {
+            return keysEqual(keys, (Document) index.get("key")) && unique == Boolean.TRUE.equals(index.get("unique"));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return name + keys.toJson() + (unique ? " (unique)" : "");
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package de.maxikg.mongowg;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoTimeoutException;
 import com.mongodb.async.client.MongoClient;
@@ -10,25 +14,47 @@ import com.mongodb.connection.ClusterSettings;
 import com.sk89q.worldguard.bukkit.ConfigurationManager;
 import com.sk89q.worldguard.bukkit.RegionContainer;
 import com.sk89q.worldguard.bukkit.WorldGuardPlugin;
+import com.sk89q.worldguard.protection.managers.RegionManager;
+import com.sk89q.worldguard.protection.managers.storage.StorageException;
 import de.maxikg.mongowg.codec.BlockVector2DCodec;
 import de.maxikg.mongowg.codec.BlockVectorCodec;
 import de.maxikg.mongowg.codec.DefaultDomainCodec;
 import de.maxikg.mongowg.codec.ProcessingProtectedRegionCodec;
+import de.maxikg.mongowg.codec.ValueInterner;
 import de.maxikg.mongowg.model.ProcessingProtectedRegion;
+import de.maxikg.mongowg.oplog.ChangeStreamCheckpoint;
+import de.maxikg.mongowg.oplog.ChangeStreamRetriever;
+import de.maxikg.mongowg.oplog.Checkpoint;
+import de.maxikg.mongowg.oplog.OpLogCheckpoint;
+import de.maxikg.mongowg.oplog.OpLogMerger;
 import de.maxikg.mongowg.oplog.OpLogParser;
+import de.maxikg.mongowg.oplog.OpLogPipeline;
 import de.maxikg.mongowg.oplog.OpLogRetriever;
+import de.maxikg.mongowg.oplog.OpLogSource;
+import de.maxikg.mongowg.oplog.ShardedOpLogRetriever;
+import de.maxikg.mongowg.snapshot.SnapshotManager;
 import de.maxikg.mongowg.utils.InjectionUtils;
 import de.maxikg.mongowg.utils.OpLogUtils;
 import de.maxikg.mongowg.utils.OperationResultCallback;
 import de.maxikg.mongowg.wg.storage.MongoRegionDriver;
+import org.bson.BsonDocument;
 import org.bson.codecs.BsonValueCodecProvider;
 import org.bson.codecs.DocumentCodecProvider;
 import org.bson.codecs.ValueCodecProvider;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
@@ -37,7 +63,17 @@ import java.util.logging.Level;
  */
 public class MongoWGPlugin extends JavaPlugin {
 
+    private static final long READY_TIMEOUT = 30;
+
     private MongoClient client;
+    private WriteBehindQueue writeBehindQueue;
+    private ExecutorService decodeExecutor;
+    private final List<Checkpoint<?>> opLogCheckpoints = new CopyOnWriteArrayList<>();
+    private final List<MongoClient> shardClients = Lists.newArrayList();
+    private OpLogApplier opLogApplier;
+    private OpLogPipeline opLogPipeline;
+    private UpdateCoalescer updateCoalescer;
+    private SchemaMigrator schemaMigrator;
 
     /**
      * {@inheritDoc}
@@ -46,7 +82,10 @@ public class MongoWGPlugin extends JavaPlugin {
     public void onEnable() {
         saveDefaultConfig();
 
-        CodecRegistry codecRegistry = createCodecRegistry();
+        int schema = getConfig().getInt("mongodb.schema_version", ProcessingProtectedRegionCodec.SCHEMA_V1);
+        boolean binaryUuids = getConfig().getBoolean("mongodb.binary_uuids");
+        ValueInterner valueInterner = getConfig().getBoolean("mongodb.intern_values", true) ? new ValueInterner() : null;
+        CodecRegistry codecRegistry = createCodecRegistry(schema, binaryUuids, valueInterner);
         MongoClientSettings settings = MongoClientSettings.builder()
                 .clusterSettings(ClusterSettings.builder().applyConnectionString(new ConnectionString(getConfig().getString("mongodb.uri"))).build())
                 .codecRegistry(codecRegistry)
@@ -55,20 +94,157 @@ public class MongoWGPlugin extends JavaPlugin {
         MongoDatabase database = client.getDatabase(getConfig().getString("mongodb.database"));
         if (!testConnection(database))
             return;
-        RegionStorageAdapter storageAdapter = new RegionStorageAdapter(database);
-        MongoRegionDriver driver = new MongoRegionDriver(getServer(), storageAdapter);
-
-        WorldGuardPlugin wgPlugin = WorldGuardPlugin.inst();
+        if (getConfig().getBoolean("mongodb.ensure_indexes")) {
+            IndexManager indexManager = IndexManager.forRegions(database);
+            indexManager.ensureIndexes();
+            indexManager.reportUsage();
+        }
+        final RegionStorageAdapter storageAdapter = new RegionStorageAdapter(database);
+        storageAdapter.setBulkWriteBatchSize(getConfig().getInt("mongodb.bulk_write_batch_size"));
+        storageAdapter.setDeltaUpdates(getConfig().getBoolean("mongodb.delta_updates"));
+        storageAdapter.setLoadBatchSize(getConfig().getInt("mongodb.load_batch_size", RegionStorageAdapter.DEFAULT_LOAD_BATCH_SIZE));
+        int loadThreads = getConfig().getInt("mongodb.load_threads");
+        if (loadThreads <= 0)
+            loadThreads = Runtime.getRuntime().availableProcessors();
+        if (loadThreads > 1) {
+            decodeExecutor = Executors.newFixedThreadPool(loadThreads, new ThreadFactoryBuilder()
+                    .setNameFormat("MongoWG Decoder #%d")
+                    .setDaemon(true)
+                    .build());
+            storageAdapter.setDecodeExecutor(decodeExecutor);
+        }
+        long writeBehindInterval = getConfig().getLong("mongodb.write_behind_interval");
+        if (writeBehindInterval > 0) {
+            writeBehindQueue = new WriteBehindQueue(storageAdapter, writeBehindInterval, getConfig().getInt("mongodb.write_behind_threshold"));
+            writeBehindQueue.start();
+        }
+        int migrationBatchSize = getConfig().getInt("mongodb.schema_migration_batch_size");
+        boolean compactGeometry = schema == ProcessingProtectedRegionCodec.SCHEMA_V2;
+        if ((compactGeometry || binaryUuids) && migrationBatchSize > 0) {
+            schemaMigrator = new SchemaMigrator(
+                    database.getCollection(RegionStorageAdapter.COLLECTION_NAME, BsonDocument.class),
+                    storageAdapter.getOrigin(),
+                    migrationBatchSize,
+                    compactGeometry,
+                    binaryUuids
+            );
+            getServer().getScheduler().runTaskAsynchronously(this, schemaMigrator);
+        }
+        MongoRegionDriver driver = new MongoRegionDriver(getServer(), storageAdapter, writeBehindQueue);
+        getServer().getPluginManager().registerEvents(new WorldListener(storageAdapter), this);
+        long snapshotInterval = getConfig().getLong("mongodb.snapshot_interval");
+        String backend = getConfig().getString("mongodb.oplog_backend");
+        if (snapshotInterval > 0 && "sharded".equals(backend)) {
+            getLogger().warning("Snapshots are not supported by the sharded oplog backend. They are disabled.");
+        } else if (snapshotInterval > 0) {
+            final SnapshotManager snapshotManager = new SnapshotManager(
+                    new File(getDataFolder(), "snapshots"),
+                    storageAdapter,
+                    // Change streams require a replica set, whose oplog is replayed instead.
+                    "change_stream".equals(backend) ? OpLogUtils.getReplicaSetCollection(client) : OpLogUtils.getCollection(client),
+                    getConfig().getString("mongodb.database") + "." + RegionStorageAdapter.COLLECTION_NAME
+            );
+            driver.setSnapshotManager(snapshotManager);
+            getServer().getScheduler().runTaskTimerAsynchronously(this, new Runnable() {
+                @Override
+                public void run() {
+                    snapshotManager.writeAll();
+                }
+            }, snapshotInterval * 20, snapshotInterval * 20);
+        }
+        final WorldGuardPlugin wgPlugin = WorldGuardPlugin.inst();
         if (getConfig().getBoolean("mongodb.use_oplog")) {
             getLogger().info("OpLog usage enabled.");
-            WorldGuardOpLogHandler opLogHandler = new WorldGuardOpLogHandler(codecRegistry.get(ProcessingProtectedRegion.class), storageAdapter, wgPlugin);
-            getServer().getScheduler().runTaskAsynchronously(this, new OpLogRetriever(
-                    OpLogUtils.getCollection(client),
-                    new OpLogParser(opLogHandler),
-                    getConfig().getString("mongodb.database") + "." + RegionStorageAdapter.COLLECTION_NAME
-            ));
-            storageAdapter.setListener(opLogHandler);
+            opLogApplier = new OpLogApplier(wgPlugin, getConfig().getLong("mongodb.oplog_apply_budget", 5));
+            getServer().getScheduler().runTaskTimer(this, opLogApplier, 1, 1);
+            WorldGuardOpLogHandler opLogHandler = new WorldGuardOpLogHandler(codecRegistry.get(ProcessingProtectedRegion.class), storageAdapter, opLogApplier);
+            long coalesceWindow = getConfig().getLong("mongodb.oplog_coalesce_window", 50);
+            if (coalesceWindow > 0) {
+                updateCoalescer = new UpdateCoalescer(storageAdapter, opLogApplier, coalesceWindow);
+                opLogHandler.setCoalescer(updateCoalescer);
+            }
+            long checkpointInterval = getConfig().getLong("mongodb.oplog_checkpoint_interval");
+            if (checkpointInterval > 0) {
+                getServer().getScheduler().runTaskTimerAsynchronously(this, new Runnable() {
+                    @Override
+                    public void run() {
+                        saveCheckpoints();
+                    }
+                }, checkpointInterval * 20, checkpointInterval * 20);
+            }
+            Runnable resync = new Runnable() {
+                @Override
+                public void run() {
+                    getServer().getScheduler().runTask(MongoWGPlugin.this, new Runnable() {
+                        @Override
+                        public void run() {
+                            reloadRegions(wgPlugin);
+                        }
+                    });
+                }
+            };
+            String namespace = getConfig().getString("mongodb.database") + "." + RegionStorageAdapter.COLLECTION_NAME;
+            opLogPipeline = new OpLogPipeline(
+                    opLogHandler,
+                    new Function<ObjectId, RegionStorageAdapter.RegionPath>() {
+                        @Override
+                        public RegionStorageAdapter.RegionPath apply(ObjectId id) {
+                            return storageAdapter.resolvePath(id);
+                        }
+                    },
+                    getConfig().getInt("mongodb.oplog_workers", 2),
+                    getConfig().getInt("mongodb.oplog_queue_capacity", 1000)
+            );
+            OpLogParser parser = new OpLogParser(opLogPipeline, storageAdapter.getOrigin());
+            OpLogSource retriever;
+            if ("change_stream".equals(backend)) {
+                retriever = new ChangeStreamRetriever(
+                        database.getCollection(RegionStorageAdapter.COLLECTION_NAME, BsonDocument.class),
+                        opLogPipeline,
+                        resync,
+                        storageAdapter.getOrigin(),
+                        checkpointInterval > 0 ? addCheckpoint(new ChangeStreamCheckpoint(new File(getDataFolder(), "changestream.checkpoint"))) : null
+                );
+            } else if ("sharded".equals(backend)) {
+                OpLogMerger merger = new OpLogMerger(parser, getConfig().getLong("mongodb.oplog_merge_delay", 1000));
+                Map<String, OpLogRetriever> shards = Maps.newLinkedHashMap();
+                for (Map.Entry<String, String> shard : OpLogUtils.getShards(client, getConfig().getString("mongodb.uri")).entrySet()) {
+                    // Created from the whole connection string, so credentials and SSL settings are applied as well.
+                    MongoClient shardClient = MongoClients.create(new ConnectionString(shard.getValue()));
+                    shardClients.add(shardClient);
+                    shards.put(shard.getKey(), new OpLogRetriever(
+                            OpLogUtils.getReplicaSetCollection(shardClient),
+                            merger.createLane(),
+                            namespace,
+                            createCheckpoint("oplog-" + shard.getKey() + ".checkpoint", checkpointInterval),
+                            resync
+                    ));
+                }
+                getLogger().info("Tailing the oplogs of " + shards.size() + " shards.");
+                retriever = new ShardedOpLogRetriever(merger, shards);
+            } else {
+                retriever = new OpLogRetriever(
+                        OpLogUtils.getCollection(client),
+                        parser,
+                        namespace,
+                        createCheckpoint("oplog.checkpoint", checkpointInterval),
+                        resync
+                );
+            }
+            opLogPipeline.start(retriever);
+            // Regions are preloaded after the start position of the source is fixed, so changes committed while they
+            // are read are applied afterwards instead of being lost.
+            try {
+                if (!retriever.awaitReady(READY_TIMEOUT, TimeUnit.SECONDS))
+                    getLogger().warning("OpLog source is not ready after " + READY_TIMEOUT + " seconds. Changes made while preloading may be missed.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
+        if (getConfig().getBoolean("mongodb.preload"))
+            driver.preload();
+
+        getCommand("mongowg").setExecutor(new StatusCommand(opLogApplier, opLogPipeline, valueInterner));
 
         ConfigurationManager config = wgPlugin.getGlobalStateManager();
         RegionContainer container = wgPlugin.getRegionContainer();
@@ -83,12 +259,76 @@ public class MongoWGPlugin extends JavaPlugin {
      */
     @Override
     public void onDisable() {
+        if (schemaMigrator != null) {
+            schemaMigrator.stop();
+            schemaMigrator = null;
+        }
+        if (opLogPipeline != null) {
+            opLogPipeline.stop();
+            opLogPipeline = null;
+        }
+        saveCheckpoints();
+        opLogCheckpoints.clear();
+        opLogApplier = null;
+        if (updateCoalescer != null) {
+            updateCoalescer.close();
+            updateCoalescer = null;
+        }
+        if (writeBehindQueue != null) {
+            try {
+                writeBehindQueue.close();
+            } catch (StorageException e) {
+                getLogger().log(Level.SEVERE, "Cannot write " + writeBehindQueue.size() + " pending region changes.", e);
+            }
+            writeBehindQueue = null;
+        }
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdown();
+            decodeExecutor = null;
+        }
+        for (MongoClient shardClient : shardClients)
+            shardClient.close();
+        shardClients.clear();
         if (client != null) {
             client.close();
             client = null;
         }
     }
 
+    private OpLogCheckpoint createCheckpoint(String fileName, long interval) {
+        if (interval <= 0)
+            return null;
+        return addCheckpoint(new OpLogCheckpoint(new File(getDataFolder(), fileName)));
+    }
+
+    private <T extends Checkpoint<?>> T addCheckpoint(T checkpoint) {
+        opLogCheckpoints.add(checkpoint);
+        return checkpoint;
+    }
+
+    private void saveCheckpoints() {
+        for (Checkpoint<?> checkpoint : opLogCheckpoints)
+            saveCheckpoint(checkpoint);
+    }
+
+    private void saveCheckpoint(Checkpoint<?> checkpoint) {
+        try {
+            checkpoint.save();
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Cannot save oplog checkpoint.", e);
+        }
+    }
+
+    private void reloadRegions(WorldGuardPlugin wgPlugin) {
+        for (RegionManager regionManager : wgPlugin.getRegionContainer().getLoaded()) {
+            try {
+                regionManager.load();
+            } catch (StorageException e) {
+                getLogger().log(Level.SEVERE, "Cannot reload regions of " + regionManager.getName() + ".", e);
+            }
+        }
+    }
+
     private boolean testConnection(MongoDatabase database) {
         CountDownLatch waiter = new CountDownLatch(1);
         final AtomicReference<Throwable> error = new AtomicReference<>();
@@ -116,14 +356,14 @@ public class MongoWGPlugin extends JavaPlugin {
         return true;
     }
 
-    private static CodecRegistry createCodecRegistry() {
+    private static CodecRegistry createCodecRegistry(int schema, boolean binaryUuids, ValueInterner interner) {
         CodecRegistry common = CodecRegistries.fromRegistries(
                 CodecRegistries.fromProviders(new ValueCodecProvider(), new DocumentCodecProvider(), new BsonValueCodecProvider()),
-                CodecRegistries.fromCodecs(new BlockVector2DCodec(), new BlockVectorCodec(), new DefaultDomainCodec())
+                CodecRegistries.fromCodecs(new BlockVector2DCodec(), new BlockVectorCodec(), new DefaultDomainCodec(binaryUuids, interner))
         );
         return CodecRegistries.fromRegistries(
                 common,
-                CodecRegistries.fromCodecs(new ProcessingProtectedRegionCodec(common))
+                CodecRegistries.fromCodecs(new ProcessingProtectedRegionCodec(common, schema, interner))
         );
     }
 }
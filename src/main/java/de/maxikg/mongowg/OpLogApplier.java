@@ -0,0 +1,197 @@
+package de.maxikg.mongowg;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.sk89q.worldguard.bukkit.WorldGuardPlugin;
+import com.sk89q.worldguard.protection.managers.RegionManager;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import de.maxikg.mongowg.model.ProcessingProtectedRegion;
+import org.bukkit.World;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies region changes from the oplog to WorldGuard. Changes are queued by any thread and applied by {@link #run()},
+ * which should be scheduled on the main thread every tick. Every run stops after the configured time budget. Queued
+ * changes of the same region are collapsed, so only the latest one is applied.
+ */
+public class OpLogApplier implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(OpLogApplier.class.getName());
+
+    private final Map<RegionStorageAdapter.RegionPath, PendingChange> pending = Maps.newLinkedHashMap();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final WorldGuardPlugin worldGuard;
+    private final long budget;
+
+    /**
+     * Constructor.
+     *
+     * @param worldGuard The {@link WorldGuardPlugin} instance
+     * @param budget The maximum time in milliseconds which is spent in one run
+     */
+    public OpLogApplier(WorldGuardPlugin worldGuard, long budget) {
+        Preconditions.checkArgument(budget > 0, "budget must be greater than 0.");
+        this.worldGuard = Preconditions.checkNotNull(worldGuard, "worldGuard must be not null.");
+        this.budget = TimeUnit.MILLISECONDS.toNanos(budget);
+    }
+
+    /**
+     * Queues a created or updated region.
+     *
+     * @param region The {@link ProcessingProtectedRegion}
+     */
+    public void enqueueUpdate(ProcessingProtectedRegion region) {
+        enqueue(RegionStorageAdapter.RegionPath.create(region.getWorld(), region.getRegion().getId()), region);
+    }
+
+    /**
+     * Queues a deleted region.
+     *
+     * @param path The {@link RegionStorageAdapter.RegionPath} of the region
+     */
+    public void enqueueDelete(RegionStorageAdapter.RegionPath path) {
+        enqueue(path, null);
+    }
+
+    /**
+     * Applies queued changes until the queue is empty or the time budget is exhausted.
+     */
+    @Override
+    public void run() {
+        long deadline = System.nanoTime() + budget;
+        do {
+            Map.Entry<RegionStorageAdapter.RegionPath, PendingChange> entry = poll();
+            if (entry == null)
+                break;
+            try {
+                apply(entry.getKey(), entry.getValue().region);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Cannot apply oplog change of region " + entry.getKey().getId() + " in world " + entry.getKey().getWorld() + ".", e);
+            }
+            long latency = System.nanoTime() - entry.getValue().queued;
+            applied.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            long max = maxLatency.get();
+            while (latency > max && !maxLatency.compareAndSet(max, latency))
+                max = maxLatency.get();
+        } while (System.nanoTime() < deadline);
+    }
+
+    /**
+     * Returns the number of regions with queued changes.
+     *
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Returns the number of applied changes.
+     *
+     * @return The number of applied changes
+     */
+    public long getAppliedCount() {
+        return applied.get();
+    }
+
+    /**
+     * Returns the number of changes which were replaced by a newer change of the same region before being applied.
+     *
+     * @return The number of collapsed changes
+     */
+    public long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    /**
+     * Returns the average time between queueing and applying a change.
+     *
+     * @return The average latency in milliseconds
+     */
+    public double getAverageLatency() {
+        long count = applied.get();
+        return count > 0 ? totalLatency.get() / (count * 1000000.0) : 0;
+    }
+
+    /**
+     * Returns the maximum time between queueing and applying a change.
+     *
+     * @return The maximum latency in milliseconds
+     */
+    public double getMaxLatency() {
+        return maxLatency.get() / 1000000.0;
+    }
+
+    private void enqueue(RegionStorageAdapter.RegionPath path, ProcessingProtectedRegion region) {
+        synchronized (pending) {
+            PendingChange previous = pending.get(path);
+            if (previous != null) {
+                // Keep the position and age of the first change, so latency and order are not reset by bursts.
+                pending.put(path, new PendingChange(region, previous.queued));
+                collapsed.incrementAndGet();
+            } else {
+                pending.put(path, new PendingChange(region, System.nanoTime()));
+            }
+        }
+    }
+
+    private Map.Entry<RegionStorageAdapter.RegionPath, PendingChange> poll() {
+        synchronized (pending) {
+            Iterator<Map.Entry<RegionStorageAdapter.RegionPath, PendingChange>> iterator = pending.entrySet().iterator();
+            if (!iterator.hasNext())
+                return null;
+            Map.Entry<RegionStorageAdapter.RegionPath, PendingChange> entry = iterator.next();
+            iterator.remove();
+            return Maps.immutableEntry(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void apply(RegionStorageAdapter.RegionPath path, ProcessingProtectedRegion region) {
+        World world = worldGuard.getServer().getWorld(path.getWorld());
+        if (world == null)
+            return;
+        RegionManager regionManager = worldGuard.getRegionManager(world);
+        if (regionManager == null)
+            return;
+
+        if (region == null) {
+            regionManager.removeRegion(path.getId());
+            return;
+        }
+
+        ProtectedRegion protectedRegion = region.getRegion();
+        regionManager.removeRegion(protectedRegion.getId());
+        regionManager.addRegion(protectedRegion);
+        String parent = region.getParent();
+        if (parent != null) {
+            try {
+                protectedRegion.setParent(regionManager.getRegion(parent));
+            } catch (ProtectedRegion.CircularInheritanceException ignore) {
+                LOGGER.warning("Circular inheritance for region " + protectedRegion.getId() + " of world " + region.getWorld() + ".");
+            }
+        }
+    }
+
+    private static class PendingChange {
+
+        private final ProcessingProtectedRegion region;
+        private final long queued;
+
+        public PendingChange(ProcessingProtectedRegion region, long queued) {
+            this.region = region;
+            this.queued = queued;
+        }
+    }
+}
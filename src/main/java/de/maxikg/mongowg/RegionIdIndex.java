@@ -0,0 +1,344 @@
+package de.maxikg.mongowg;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bidirectional index between the {@link ObjectId} of a region document and its {@link RegionStorageAdapter.RegionPath}.
+ *
+ * <p>Instead of one boxed {@link ObjectId} and one {@link RegionStorageAdapter.RegionPath} per region, the 12 bytes of
+ * every id are packed into an {@code int} array, worlds are stored as small integer ids and region names by reference.
+ * Entries are addressed by their position in these arrays. Two open addressing hash tables map ids and paths to
+ * entries. Reads may happen concurrently, writes are exclusive.</p>
+ */
+public class RegionIdIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int ID_INTS = 3;
+    private static final int FREE = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<String> worldNames = Lists.newArrayList();
+    private final Map<String, Integer> worldIds = Maps.newHashMap();
+
+    // Entries
+    private int[] ids;
+    private int[] worlds;
+    private String[] names;
+    private int entryCount;
+    private int freeHead = FREE;
+    private int size;
+
+    // Hash tables, which contain entry index + 1 or 0 for empty slots
+    private int[] byId;
+    private int[] byPath;
+
+    /**
+     * Constructor.
+     */
+    public RegionIdIndex() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of indexed regions.
+     *
+     * @return The number of regions
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Associates the given id with the given region. Previous associations of the id or the region are replaced.
+     *
+     * @param id The {@link ObjectId} of the document
+     * @param world The name of the world
+     * @param name The name of the region
+     */
+    public void put(ObjectId id, String world, String name) {
+        Preconditions.checkNotNull(id, "id must be not null.");
+        Preconditions.checkNotNull(world, "world must be not null.");
+        Preconditions.checkNotNull(name, "name must be not null.");
+        int[] key = pack(id);
+        lock.writeLock().lock();
+        try {
+            int worldId = getOrCreateWorldId(world);
+            int entry = findById(key);
+            if (entry >= 0) {
+                if (worlds[entry] == worldId && names[entry].equals(name))
+                    return;
+                removeEntry(entry);
+            }
+            entry = findByPath(worldId, name);
+            if (entry >= 0)
+                removeEntry(entry);
+
+            if (size + 1 > byId.length / 2)
+                allocate(byId.length * 2);
+            entry = allocateEntry();
+            System.arraycopy(key, 0, ids, entry * ID_INTS, ID_INTS);
+            worlds[entry] = worldId;
+            names[entry] = name;
+            insert(byId, hashId(key), entry);
+            insert(byPath, hashPath(worldId, name), entry);
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the region of the given id.
+     *
+     * @param id The {@link ObjectId} of the document
+     * @return The {@link RegionStorageAdapter.RegionPath} or {@code null} if the id is unknown
+     */
+    public RegionStorageAdapter.RegionPath getPath(ObjectId id) {
+        int[] key = pack(id);
+        lock.readLock().lock();
+        try {
+            int entry = findById(key);
+            return entry >= 0 ? RegionStorageAdapter.RegionPath.create(worldNames.get(worlds[entry]), names[entry]) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the id of the given region.
+     *
+     * @param world The name of the world
+     * @param name The name of the region
+     * @return The {@link ObjectId} or {@code null} if the region is unknown
+     */
+    public ObjectId getId(String world, String name) {
+        lock.readLock().lock();
+        try {
+            Integer worldId = worldIds.get(world);
+            if (worldId == null)
+                return null;
+            int entry = findByPath(worldId, name);
+            return entry >= 0 ? unpack(entry) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the given id.
+     *
+     * @param id The {@link ObjectId} of the document
+     * @return {@code true} if the id was known, otherwise {@code false}
+     */
+    public boolean remove(ObjectId id) {
+        int[] key = pack(id);
+        lock.writeLock().lock();
+        try {
+            int entry = findById(key);
+            if (entry < 0)
+                return false;
+            removeEntry(entry);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the given region.
+     *
+     * @param world The name of the world
+     * @param name The name of the region
+     * @return {@code true} if the region was known, otherwise {@code false}
+     */
+    public boolean remove(String world, String name) {
+        lock.writeLock().lock();
+        try {
+            Integer worldId = worldIds.get(world);
+            if (worldId == null)
+                return false;
+            int entry = findByPath(worldId, name);
+            if (entry < 0)
+                return false;
+            removeEntry(entry);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all regions of the given world.
+     *
+     * @param world The name of the world
+     * @return The number of removed regions
+     */
+    public int removeWorld(String world) {
+        lock.writeLock().lock();
+        try {
+            Integer worldId = worldIds.get(world);
+            if (worldId == null)
+                return 0;
+            int removed = 0;
+            for (int entry = 0; entry < entryCount; entry++) {
+                if (worlds[entry] == worldId) {
+                    removeEntry(entry);
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int getOrCreateWorldId(String world) {
+        Integer worldId = worldIds.get(world);
+        if (worldId == null) {
+            worldId = worldNames.size();
+            worldNames.add(world);
+            worldIds.put(world, worldId);
+        }
+        return worldId;
+    }
+
+    private int findById(int[] key) {
+        int mask = byId.length - 1;
+        for (int slot = hashId(key) & mask; byId[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = byId[slot] - 1;
+            int offset = entry * ID_INTS;
+            if (ids[offset] == key[0] && ids[offset + 1] == key[1] && ids[offset + 2] == key[2])
+                return entry;
+        }
+        return -1;
+    }
+
+    private int findByPath(int worldId, String name) {
+        int mask = byPath.length - 1;
+        for (int slot = hashPath(worldId, name) & mask; byPath[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = byPath[slot] - 1;
+            if (worlds[entry] == worldId && names[entry].equals(name))
+                return entry;
+        }
+        return -1;
+    }
+
+    private int allocateEntry() {
+        if (freeHead != FREE) {
+            int entry = freeHead;
+            freeHead = ids[entry * ID_INTS];
+            return entry;
+        }
+        if (entryCount == worlds.length) {
+            int capacity = worlds.length * 2;
+            ids = Arrays.copyOf(ids, capacity * ID_INTS);
+            worlds = Arrays.copyOf(worlds, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        return entryCount++;
+    }
+
+    private void removeEntry(int entry) {
+        int offset = entry * ID_INTS;
+        delete(byId, hashId(ids[offset], ids[offset + 1], ids[offset + 2]), entry);
+        delete(byPath, hashPath(worlds[entry], names[entry]), entry);
+        worlds[entry] = FREE;
+        names[entry] = null;
+        ids[offset] = freeHead;
+        freeHead = entry;
+        size--;
+    }
+
+    private void allocate(int tableCapacity) {
+        int entryCapacity = tableCapacity / 2;
+        if (ids == null) {
+            ids = new int[entryCapacity * ID_INTS];
+            worlds = new int[entryCapacity];
+            names = new String[entryCapacity];
+        }
+        byId = new int[tableCapacity];
+        byPath = new int[tableCapacity];
+        for (int entry = 0; entry < entryCount; entry++) {
+            if (worlds[entry] == FREE)
+                continue;
+            int offset = entry * ID_INTS;
+            insert(byId, hashId(ids[offset], ids[offset + 1], ids[offset + 2]), entry);
+            insert(byPath, hashPath(worlds[entry], names[entry]), entry);
+        }
+    }
+
+    private static void insert(int[] table, int hash, int entry) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = entry + 1;
+    }
+
+    private void delete(int[] table, int hash, int entry) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != entry + 1)
+            slot = (slot + 1) & mask;
+
+        // Backward shift deletion keeps the probe sequences intact without tombstones.
+        int next = (slot + 1) & mask;
+        while (table[next] != 0) {
+            int candidate = table[next] - 1;
+            int home = (table == byId ? hashId(ids[candidate * ID_INTS], ids[candidate * ID_INTS + 1], ids[candidate * ID_INTS + 2])
+                    : hashPath(worlds[candidate], names[candidate])) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[slot] = 0;
+    }
+
+    private ObjectId unpack(int entry) {
+        int offset = entry * ID_INTS;
+        return new ObjectId(ByteBuffer.allocate(12).putInt(ids[offset]).putInt(ids[offset + 1]).putInt(ids[offset + 2]).array());
+    }
+
+    private static int[] pack(ObjectId id) {
+        ByteBuffer buffer = ByteBuffer.wrap(id.toByteArray());
+        return new int[] { buffer.getInt(), buffer.getInt(), buffer.getInt() };
+    }
+
+    private static int hashId(int[] key) {
+        return hashId(key[0], key[1], key[2]);
+    }
+
+    private static int hashId(int a, int b, int c) {
+        return mix((a * 31 + b) * 31 + c);
+    }
+
+    private static int hashPath(int worldId, String name) {
+        return mix(worldId * 31 + name.hashCode());
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
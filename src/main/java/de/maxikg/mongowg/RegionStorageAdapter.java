@@ -1,38 +1,84 @@
 package de.maxikg.mongowg;
 
+import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
-import com.google.common.collect.MapMaker;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.mongodb.Block;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.async.SingleResultCallback;
 import com.mongodb.async.client.MongoCollection;
 import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.sk89q.worldguard.protection.managers.RegionDifference;
 import com.sk89q.worldguard.protection.managers.storage.RegionDatabaseUtils;
 import com.sk89q.worldguard.protection.managers.storage.StorageException;
+import com.sk89q.worldguard.protection.regions.GlobalProtectedRegion;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import de.maxikg.mongowg.model.ProcessingProtectedRegion;
+import de.maxikg.mongowg.oplog.WriteOrigin;
 import de.maxikg.mongowg.utils.ConcurrentUtils;
-import de.maxikg.mongowg.utils.OperationResultCallback;
-import org.bson.Document;
+import de.maxikg.mongowg.utils.FutureResultCallback;
+import de.maxikg.mongowg.utils.UpdateUtils;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonReader;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.RawBsonDocumentCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.conversions.Bson;
+import org.bson.io.BasicOutputBuffer;
 import org.bson.types.ObjectId;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
- * The adapter to save or retrieve regions from database.
+ * The adapter to save or retrieve regions from database. Every operation is available as blocking method, as used by
+ * WorldGuard's {@code RegionDatabase}, and as non-blocking method which returns a {@link ListenableFuture}.
  */
 public class RegionStorageAdapter {
 
@@ -41,11 +87,32 @@ public class RegionStorageAdapter {
      */
     public static final String COLLECTION_NAME = "regions";
 
-    private static final Interner<RegionPath> REGION_PATH_CACHE = Interners.newWeakInterner();
+    /**
+     * The default cursor batch size for loading regions.
+     */
+    public static final int DEFAULT_LOAD_BATCH_SIZE = 1000;
 
-    private final Map<ObjectId, RegionPath> idToRegion = Maps.newConcurrentMap();
+    private static final Logger LOGGER = Logger.getLogger(RegionStorageAdapter.class.getName());
+    private static final Interner<RegionPath> REGION_PATH_CACHE = Interners.newWeakInterner();
+    private static final HashFunction FINGERPRINT_FUNCTION = Hashing.murmur3_128();
+
+    private final RegionIdIndex idIndex = new RegionIdIndex();
+    private final WriteOrigin origin = new WriteOrigin();
+    private final ConcurrentMap<RegionPath, Long> fingerprints = Maps.newConcurrentMap();
+    private final ConcurrentMap<RegionPath, BsonDocument> snapshots = Maps.newConcurrentMap();
+    // Raw documents of loaded regions. Their fingerprint and snapshot are derived on first use, so loading doesn't
+    // encode every region again.
+    private final ConcurrentMap<RegionPath, RawBsonDocument> loadedDocuments = Maps.newConcurrentMap();
+    // Regions which were loaded for or saved by WorldGuard. Regions which are only tracked, e.g. remote changes which
+    // are not applied yet, are never deleted because they are missing from a saved world.
+    private final Set<RegionPath> knownPaths = Sets.newConcurrentHashSet();
     private final MongoDatabase database;
+    private final MongoCollection<RawBsonDocument> rawCollection;
     private RegionStorageListener listener;
+    private int bulkWriteBatchSize;
+    private boolean deltaUpdates;
+    private int loadBatchSize = DEFAULT_LOAD_BATCH_SIZE;
+    private ListeningExecutorService decodeExecutor = MoreExecutors.sameThreadExecutor();
 
     /**
      * Constructor.
@@ -54,6 +121,19 @@ public class RegionStorageAdapter {
      */
     public RegionStorageAdapter(MongoDatabase database) {
         this.database = Preconditions.checkNotNull(database, "database must be not null.");
+        this.rawCollection = database.getCollection(COLLECTION_NAME, RawBsonDocument.class).withCodecRegistry(CodecRegistries.fromRegistries(
+                CodecRegistries.fromCodecs(new RawBsonDocumentCodec()),
+                database.getCodecRegistry()
+        ));
+    }
+
+    /**
+     * Returns the {@link WriteOrigin} with which all written regions are stamped.
+     *
+     * @return The {@link WriteOrigin}
+     */
+    public WriteOrigin getOrigin() {
+        return origin;
     }
 
     /**
@@ -74,6 +154,89 @@ public class RegionStorageAdapter {
         this.listener = listener;
     }
 
+    /**
+     * Returns the maximum number of operations which are sent in one bulk write.
+     *
+     * @return The batch size or {@code 0} if bulk writes are disabled
+     */
+    public int getBulkWriteBatchSize() {
+        return bulkWriteBatchSize;
+    }
+
+    /**
+     * Set's the maximum number of operations which are sent in one bulk write. If greater than {@code 0},
+     * {@link #saveAll(String, Set)} and {@link #saveChanges(String, RegionDifference)} group their upserts and
+     * deletes into unordered bulk writes instead of issuing one operation per region.
+     *
+     * @param bulkWriteBatchSize The batch size or {@code 0} to disable bulk writes
+     * @throws IllegalArgumentException Thrown, if {@code bulkWriteBatchSize} is negative
+     */
+    public void setBulkWriteBatchSize(int bulkWriteBatchSize) {
+        Preconditions.checkArgument(bulkWriteBatchSize >= 0, "bulkWriteBatchSize must be not negative.");
+        this.bulkWriteBatchSize = bulkWriteBatchSize;
+    }
+
+    /**
+     * Returns whether changed regions are saved as field level updates.
+     *
+     * @return {@code true} if delta updates are enabled, otherwise {@code false}
+     */
+    public boolean isDeltaUpdates() {
+        return deltaUpdates;
+    }
+
+    /**
+     * Enables or disables field level updates. If enabled, changed regions are compared against the last persisted
+     * state and only the changed fields are sent as {@code $set} and {@code $unset}.
+     *
+     * @param deltaUpdates {@code true} to enable delta updates, {@code false} to always write the whole document
+     */
+    public void setDeltaUpdates(boolean deltaUpdates) {
+        this.deltaUpdates = deltaUpdates;
+        if (!deltaUpdates)
+            snapshots.clear();
+    }
+
+    /**
+     * Returns the cursor batch size for loading regions.
+     *
+     * @return The batch size
+     */
+    public int getLoadBatchSize() {
+        return loadBatchSize;
+    }
+
+    /**
+     * Set's the cursor batch size for loading regions. It is also the number of documents which are decoded as one
+     * task on the decode executor.
+     *
+     * @param loadBatchSize The batch size
+     * @throws IllegalArgumentException Thrown, if {@code loadBatchSize} is not positive
+     */
+    public void setLoadBatchSize(int loadBatchSize) {
+        Preconditions.checkArgument(loadBatchSize > 0, "loadBatchSize must be greater than 0.");
+        this.loadBatchSize = loadBatchSize;
+    }
+
+    /**
+     * Set's the {@link ExecutorService} on which loaded documents are decoded. It should be bounded, because every
+     * batch of a running load is submitted to it.
+     *
+     * @param decodeExecutor The {@link ExecutorService} or {@code null} to decode on the driver's thread
+     */
+    public void setDecodeExecutor(ExecutorService decodeExecutor) {
+        this.decodeExecutor = decodeExecutor != null ? MoreExecutors.listeningDecorator(decodeExecutor) : MoreExecutors.sameThreadExecutor();
+    }
+
+    /**
+     * Returns the regions collection, which returns the documents as {@link RawBsonDocument}s.
+     *
+     * @return The {@link MongoCollection}
+     */
+    public MongoCollection<RawBsonDocument> getRawCollection() {
+        return rawCollection;
+    }
+
     /**
      * Resolves a given {@link ObjectId} to it's {@link RegionPath}.
      *
@@ -81,7 +244,28 @@ public class RegionStorageAdapter {
      * @return The {@link RegionPath} or {@code null} if the {@code id} is not known
      */
     public RegionPath resolvePath(ObjectId id) {
-        return idToRegion.get(id);
+        return idIndex.getPath(id);
+    }
+
+    /**
+     * Resolves a given region to the {@link ObjectId} of its document.
+     *
+     * @param world The name of the world
+     * @param region The name of the region
+     * @return The {@link ObjectId} or {@code null} if the region is not known
+     */
+    public ObjectId resolveId(String world, String region) {
+        return idIndex.getId(world, region);
+    }
+
+    /**
+     * Forgets everything which is known about the regions of the given world. Should be called after the world was
+     * unloaded.
+     *
+     * @param world The name of the world
+     */
+    public void unloadWorld(String world) {
+        forgetTracked(world);
     }
 
     /**
@@ -91,24 +275,115 @@ public class RegionStorageAdapter {
      * @return The {@link ProcessingProtectedRegion}
      */
     public ProcessingProtectedRegion load(ObjectId id) {
-        final CountDownLatch waiter = new CountDownLatch(1);
-        final AtomicReference<ProcessingProtectedRegion> result = new AtomicReference<>();
-        final AtomicReference<Throwable> lastError = new AtomicReference<>();
-        getCollection().find(Filters.eq("_id", id)).first(new SingleResultCallback<ProcessingProtectedRegion>() {
+        try {
+            return ConcurrentUtils.safeGet(loadAsync(id));
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Load's the region with the given {@link ObjectId} from database without blocking.
+     *
+     * @param id The {@link ObjectId}
+     * @return A {@link ListenableFuture} of the {@link ProcessingProtectedRegion}, which results in {@code null} if
+     *         no region with the given {@code id} exists
+     */
+    public ListenableFuture<ProcessingProtectedRegion> loadAsync(ObjectId id) {
+        FutureResultCallback<ProcessingProtectedRegion> callback = FutureResultCallback.create(new SingleResultCallback<ProcessingProtectedRegion>() {
             @Override
             public void onResult(ProcessingProtectedRegion region, Throwable throwable) {
-                result.set(region);
-                lastError.set(throwable);
-                waiter.countDown();
-                if (region != null)
-                    idToRegion.put(region.getDatabaseId(), new RegionPath(region.getWorld(), region.getRegion().getId()));
+                if (region != null) {
+                    idIndex.put(region.getDatabaseId(), region.getWorld(), region.getRegion().getId());
+                    track(region);
+                }
             }
         });
-        Throwable realLastError = lastError.get();
-        if (realLastError != null)
-            Throwables.propagate(realLastError);
-        ConcurrentUtils.safeAwait(waiter);
-        return result.get();
+        getCollection().find(Filters.eq("_id", id)).first(callback);
+        return callback.getFuture();
+    }
+
+    /**
+     * Load's the regions with the given {@link ObjectId}s from database with a single query.
+     *
+     * @param ids The {@link ObjectId}s
+     * @return A {@link Map} from {@link ObjectId} to {@link ProcessingProtectedRegion}, which doesn't contain regions
+     *         which don't exist anymore
+     * @throws StorageException Thrown if something goes wrong during database query
+     */
+    public Map<ObjectId, ProcessingProtectedRegion> loadByIds(Collection<ObjectId> ids) throws StorageException {
+        return await(loadByIdsAsync(ids), "An error occurred while loading from MongoDB.");
+    }
+
+    /**
+     * Load's the regions with the given {@link ObjectId}s from database with a single query without blocking.
+     *
+     * @param ids The {@link ObjectId}s
+     * @return A {@link ListenableFuture} of a {@link Map} from {@link ObjectId} to {@link ProcessingProtectedRegion},
+     *         which doesn't contain regions which don't exist anymore
+     */
+    public ListenableFuture<Map<ObjectId, ProcessingProtectedRegion>> loadByIdsAsync(Collection<ObjectId> ids) {
+        return Futures.transform(loadRegions(Filters.in("_id", ImmutableSet.copyOf(ids))), new Function<List<ProcessingProtectedRegion>, Map<ObjectId, ProcessingProtectedRegion>>() {
+            @Override
+            public Map<ObjectId, ProcessingProtectedRegion> apply(List<ProcessingProtectedRegion> loaded) {
+                Map<ObjectId, ProcessingProtectedRegion> result = Maps.newHashMapWithExpectedSize(loaded.size());
+                for (ProcessingProtectedRegion region : loaded)
+                    result.put(region.getDatabaseId(), region);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Rebuilds a region after an update without reading it from database. A replacement document is decoded directly,
+     * update modifiers are applied to the locally known state of the region, which requires delta updates.
+     *
+     * @param id The {@link ObjectId} of the updated document
+     * @param update The replacement document or the update modifiers
+     * @return The updated {@link ProcessingProtectedRegion} or {@code null} if it cannot be rebuilt locally
+     */
+    public ProcessingProtectedRegion applyUpdate(ObjectId id, BsonDocument update) {
+        BsonDocument document;
+        if (UpdateUtils.isUpdate(update)) {
+            RegionPath path = resolvePath(id);
+            if (path != null)
+                trackLoaded(path);
+            BsonDocument before = path != null ? snapshots.get(path) : null;
+            if (before == null)
+                return null;
+            try {
+                document = UpdateUtils.apply(before, update);
+            } catch (IllegalArgumentException ignore) {
+                return null;
+            }
+        } else {
+            document = update;
+        }
+
+        // Payloads which are neither update modifiers nor regions, e.g. oplog diffs of newer servers, fail to decode.
+        // The caller reads the region from database instead.
+        ProcessingProtectedRegion decoded;
+        try {
+            decoded = database.getCodecRegistry().get(ProcessingProtectedRegion.class).decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+        } catch (RuntimeException ignore) {
+            return null;
+        }
+        ProcessingProtectedRegion region = new ProcessingProtectedRegion(decoded.getRegion(), decoded.getParent(), id, decoded.getWorld());
+        idIndex.put(id, region.getWorld(), region.getRegion().getId());
+        track(region);
+        return region;
+    }
+
+    /**
+     * Registers a region which was decoded elsewhere, e.g. from an oplog insert, so its {@link ObjectId} can be
+     * resolved and later changes of it can be applied.
+     *
+     * @param region The {@link ProcessingProtectedRegion} with its database id
+     */
+    public void register(ProcessingProtectedRegion region) {
+        Preconditions.checkNotNull(region.getDatabaseId(), "region must have a database id.");
+        idIndex.put(region.getDatabaseId(), region.getWorld(), region.getRegion().getId());
+        track(region);
     }
 
     /**
@@ -118,61 +393,144 @@ public class RegionStorageAdapter {
      * @return A immutable {@link Set} of all {@link ProtectedRegion}s
      * @throws StorageException Thrown if something goes wrong during database query
      */
-    public Set<ProtectedRegion> loadAll(final String world) throws StorageException {
-        final CountDownLatch waiter = new CountDownLatch(1);
-        final AtomicReference<Throwable> lastError = new AtomicReference<>();
-        final ConcurrentMap<String, ProtectedRegion> regions = new MapMaker().makeMap();
-        final ConcurrentMap<ProtectedRegion, String> parents = new MapMaker().makeMap();
-        getCollection().find(Filters.eq("world", world)).forEach(
-                new Block<ProcessingProtectedRegion>() {
-                    @Override
-                    public void apply(ProcessingProtectedRegion region) {
-                        if (!world.equals(region.getWorld()))
-                            return;
-                        ProtectedRegion protectedRegion = region.getRegion();
-                        if (region != null)
-                            idToRegion.put(region.getDatabaseId(), new RegionPath(world, protectedRegion.getId()));
-                        regions.putIfAbsent(protectedRegion.getId(), protectedRegion);
-                        String parent = region.getParent();
-                        if (parent != null)
-                            parents.putIfAbsent(protectedRegion, parent);
-                    }
-                },
-                OperationResultCallback.<Void>create(lastError, waiter)
-        );
-        ConcurrentUtils.safeAwait(waiter);
-        Throwable realLastError = lastError.get();
-        if (realLastError != null)
-            throw new StorageException("An error occurred while saving or updating in MongoDB.", realLastError);
-        RegionDatabaseUtils.relinkParents(regions, parents);
-        return ImmutableSet.copyOf(regions.values());
+    public Set<ProtectedRegion> loadAll(String world) throws StorageException {
+        return await(loadAllAsync(world), "An error occurred while loading from MongoDB.");
+    }
+
+    /**
+     * Load all regions for a specified world without blocking.
+     *
+     * @param world The name of the world
+     * @return A {@link ListenableFuture} of a immutable {@link Set} of all {@link ProtectedRegion}s
+     */
+    public ListenableFuture<Set<ProtectedRegion>> loadAllAsync(final String world) {
+        forgetTracked(world);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        return Futures.transform(loadRegions(Filters.eq("world", world)), new Function<List<ProcessingProtectedRegion>, Set<ProtectedRegion>>() {
+            @Override
+            public Set<ProtectedRegion> apply(List<ProcessingProtectedRegion> loaded) {
+                Set<ProtectedRegion> regions = link(world, loaded);
+                long millis = Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS), 1);
+                LOGGER.info("Loaded " + regions.size() + " regions of world " + world + " in " + millis + " ms ("
+                        + (regions.size() * 1000L / millis) + " regions/s).");
+                return regions;
+            }
+        });
     }
 
     /**
-     * Saves a set of {@link ProtectedRegion} for the specified world to database.
+     * Load all regions of a world from the given documents instead of querying the database. The documents must have
+     * the same format as the ones which are stored in the database, e.g. a local copy of them.
+     *
+     * @param world The name of the world
+     * @param documents The documents of the regions
+     * @return A immutable {@link Set} of all {@link ProtectedRegion}s
+     * @throws StorageException Thrown if a document cannot be decoded
+     */
+    public Set<ProtectedRegion> loadAll(String world, Collection<? extends BsonDocument> documents) throws StorageException {
+        return await(loadAllAsync(world, documents), "An error occurred while decoding regions.");
+    }
+
+    /**
+     * Load all regions of a world from the given documents without blocking.
+     *
+     * @param world The name of the world
+     * @param documents The documents of the regions
+     * @return A {@link ListenableFuture} of a immutable {@link Set} of all {@link ProtectedRegion}s
+     * @see #loadAll(String, Collection)
+     */
+    public ListenableFuture<Set<ProtectedRegion>> loadAllAsync(final String world, Collection<? extends BsonDocument> documents) {
+        forgetTracked(world);
+        List<ListenableFuture<List<ProcessingProtectedRegion>>> chunks = Lists.newArrayList();
+        for (List<? extends BsonDocument> chunk : Lists.partition(ImmutableList.copyOf(documents), loadBatchSize))
+            chunks.add(decodeExecutor.submit(new DecodeTask(chunk)));
+        return Futures.transform(concat(chunks), new Function<List<ProcessingProtectedRegion>, Set<ProtectedRegion>>() {
+            @Override
+            public Set<ProtectedRegion> apply(List<ProcessingProtectedRegion> loaded) {
+                return link(world, loaded);
+            }
+        });
+    }
+
+    /**
+     * Load all regions of several worlds with a single query.
+     *
+     * @param worlds The names of the worlds
+     * @return A immutable {@link Map} from world name to a immutable {@link Set} of all its {@link ProtectedRegion}s,
+     *         which contains every requested world
+     * @throws StorageException Thrown if something goes wrong during database query
+     */
+    public Map<String, Set<ProtectedRegion>> loadAll(Collection<String> worlds) throws StorageException {
+        return await(loadAllAsync(worlds), "An error occurred while loading from MongoDB.");
+    }
+
+    /**
+     * Load all regions of several worlds with a single query without blocking.
+     *
+     * @param worlds The names of the worlds
+     * @return A {@link ListenableFuture} of a immutable {@link Map} from world name to a immutable {@link Set} of all
+     *         its {@link ProtectedRegion}s, which contains every requested world
+     */
+    public ListenableFuture<Map<String, Set<ProtectedRegion>>> loadAllAsync(Collection<String> worlds) {
+        final Set<String> worldSet = ImmutableSet.copyOf(worlds);
+        for (String world : worldSet)
+            forgetTracked(world);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        return Futures.transform(loadRegions(Filters.in("world", worldSet)), new Function<List<ProcessingProtectedRegion>, Map<String, Set<ProtectedRegion>>>() {
+            @Override
+            public Map<String, Set<ProtectedRegion>> apply(List<ProcessingProtectedRegion> loaded) {
+                Map<String, List<ProcessingProtectedRegion>> partitioned = Maps.newHashMapWithExpectedSize(worldSet.size());
+                for (String world : worldSet)
+                    partitioned.put(world, Lists.<ProcessingProtectedRegion>newArrayList());
+                for (ProcessingProtectedRegion region : loaded) {
+                    List<ProcessingProtectedRegion> regions = partitioned.get(region.getWorld());
+                    if (regions != null)
+                        regions.add(region);
+                }
+
+                ImmutableMap.Builder<String, Set<ProtectedRegion>> result = ImmutableMap.builder();
+                for (Map.Entry<String, List<ProcessingProtectedRegion>> entry : partitioned.entrySet())
+                    result.put(entry.getKey(), link(entry.getKey(), entry.getValue()));
+                long millis = Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS), 1);
+                LOGGER.info("Loaded " + loaded.size() + " regions of " + worldSet.size() + " worlds in " + millis + " ms ("
+                        + (loaded.size() * 1000L / millis) + " regions/s).");
+                return result.build();
+            }
+        });
+    }
+
+    /**
+     * Saves a set of {@link ProtectedRegion} for the specified world to database. Regions whose fingerprint is equal
+     * to the one of the last load or save are skipped. Regions which were loaded or saved by WorldGuard before but are
+     * not part of {@code set} anymore are deleted.
      *
      * @param world The name of the world
      * @param set The {@link Set} of regions
      * @throws StorageException Thrown if something goes wrong during database query
      */
-    public void saveAll(final String world, Set<ProtectedRegion> set) throws StorageException {
-        MongoCollection<ProcessingProtectedRegion> collection = getCollection();
-        final AtomicReference<Throwable> lastError = new AtomicReference<>();
-        final CountDownLatch waiter = new CountDownLatch(set.size());
-        for (final ProtectedRegion region : set) {
-            if (listener != null)
-                listener.beforeDatabaseUpdate(world, region);
-            collection.findOneAndUpdate(
-                    Filters.and(Filters.eq("name", region.getId()), Filters.eq("world", world)),
-                    new Document("$set", new ProcessingProtectedRegion(region, world)),
-                    new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER),
-                    OperationResultCallback.create(lastError, waiter, new UpdateCallback(world))
-            );
+    public void saveAll(String world, Set<ProtectedRegion> set) throws StorageException {
+        await(saveAllAsync(world, set), "An error occurred while saving or updating in MongoDB.");
+    }
+
+    /**
+     * Saves a set of {@link ProtectedRegion} for the specified world to database without blocking. The regions are
+     * encoded before this method returns. See {@link #saveAll(String, Set)} for details.
+     *
+     * @param world The name of the world
+     * @param set The {@link Set} of regions
+     * @return A {@link ListenableFuture} which completes after all writes are completed
+     */
+    public ListenableFuture<Void> saveAllAsync(String world, Set<ProtectedRegion> set) {
+        Set<String> present = Sets.newHashSetWithExpectedSize(set.size());
+        for (ProtectedRegion region : set)
+            present.add(region.getId());
+        List<ProtectedRegion> removed = Lists.newArrayList();
+        for (RegionPath path : knownPaths) {
+            // The region is not known to WorldGuard anymore, so only its id is available for the deletion.
+            if (world.equals(path.getWorld()) && !present.contains(path.getId()))
+                removed.add(new GlobalProtectedRegion(path.getId()));
         }
-        ConcurrentUtils.safeAwait(waiter);
-        Throwable realLastError = lastError.get();
-        if (realLastError != null)
-            throw new StorageException("An error occurred while saving or updating in MongoDB.", realLastError);
+        return write(world, set, removed);
     }
 
     /**
@@ -182,53 +540,269 @@ public class RegionStorageAdapter {
      * @param regionDifference The {@link RegionDifference} which should be saved
      * @throws StorageException Thrown if something goes wrong during database query
      */
-    public void saveChanges(final String world, RegionDifference regionDifference) throws StorageException {
+    public void saveChanges(String world, RegionDifference regionDifference) throws StorageException {
+        await(saveChangesAsync(world, regionDifference), "An error occurred while saving or updating in MongoDB.");
+    }
+
+    /**
+     * Saves the given {@link RegionDifference} for the specified world to database without blocking. The regions are
+     * encoded before this method returns.
+     *
+     * @param world The name oft the world
+     * @param regionDifference The {@link RegionDifference} which should be saved
+     * @return A {@link ListenableFuture} which completes after all writes are completed
+     */
+    public ListenableFuture<Void> saveChangesAsync(String world, RegionDifference regionDifference) {
+        return write(world, regionDifference.getChanged(), regionDifference.getRemoved());
+    }
+
+    private ListenableFuture<Void> write(String world, Collection<ProtectedRegion> changed, Collection<ProtectedRegion> removed) {
+        List<PendingUpdate> updates = Lists.newArrayListWithCapacity(changed.size());
+        for (ProtectedRegion region : changed) {
+            RegionPath path = RegionPath.create(world, region.getId());
+            knownPaths.add(path);
+            trackLoaded(path);
+            byte[] encoded = encode(new ProcessingProtectedRegion(region, world));
+            long fingerprint = fingerprint(encoded);
+            Long known = fingerprints.get(path);
+            if (known != null && known == fingerprint)
+                continue;
+            BsonDocument document = toDocument(encoded);
+            Bson update = createUpdate(path, document);
+            if (update == null) {
+                fingerprints.put(path, fingerprint);
+                continue;
+            }
+            updates.add(new PendingUpdate(region, document, fingerprint, update));
+        }
+
+        if (bulkWriteBatchSize > 0)
+            return bulkWrite(world, updates, removed);
+        else
+            return singleWrite(world, updates, removed);
+    }
+
+    private ListenableFuture<Void> singleWrite(String world, List<PendingUpdate> updates, Collection<ProtectedRegion> removed) {
         MongoCollection<ProcessingProtectedRegion> collection = getCollection();
-        Set<ProtectedRegion> changed = regionDifference.getChanged();
-        Set<ProtectedRegion> removed = regionDifference.getRemoved();
-        final AtomicReference<Throwable> lastError = new AtomicReference<>();
-        final CountDownLatch waiter = new CountDownLatch(changed.size() + removed.size());
-        for (ProtectedRegion region : regionDifference.getChanged()) {
+        List<ListenableFuture<ProcessingProtectedRegion>> futures = Lists.newArrayListWithCapacity(updates.size() + removed.size());
+        for (PendingUpdate update : updates) {
             if (listener != null)
-                listener.beforeDatabaseUpdate(world, region);
+                listener.beforeDatabaseUpdate(world, update.region);
+            FutureResultCallback<ProcessingProtectedRegion> callback = FutureResultCallback.create(new UpdateCallback(world, update));
             collection.findOneAndUpdate(
-                    Filters.and(Filters.eq("name", region.getId()), Filters.eq("world", world)),
-                    new Document("$set", new ProcessingProtectedRegion(region, world)),
+                    createFilter(world, update.region),
+                    update.update,
                     new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER),
-                    OperationResultCallback.create(lastError, waiter, new UpdateCallback(world))
+                    callback
             );
+            futures.add(callback.getFuture());
         }
 
-        for (ProtectedRegion region : regionDifference.getRemoved()) {
+        for (ProtectedRegion region : removed) {
             if (listener != null)
                 listener.beforeDatabaseDelete(world, region);
-            collection.findOneAndDelete(
-                    Filters.and(Filters.eq("name", region.getId()), Filters.eq("world", world)),
-                    OperationResultCallback.create(lastError, waiter, new DeleteCallback(world))
-            );
+            FutureResultCallback<ProcessingProtectedRegion> callback = FutureResultCallback.create(new DeleteCallback(world));
+            collection.findOneAndDelete(createDeleteFilter(world, region), callback);
+            futures.add(callback.getFuture());
+        }
+
+        return ConcurrentUtils.allCompleted(futures);
+    }
+
+    private ListenableFuture<Void> bulkWrite(String world, List<PendingUpdate> updates, Collection<ProtectedRegion> removed) {
+        List<WriteModel<ProcessingProtectedRegion>> requests = Lists.newArrayListWithCapacity(updates.size() + removed.size());
+        List<ProtectedRegion> affected = Lists.newArrayListWithCapacity(updates.size() + removed.size());
+        for (PendingUpdate update : updates) {
+            if (listener != null)
+                listener.beforeDatabaseUpdate(world, update.region);
+            requests.add(new UpdateOneModel<ProcessingProtectedRegion>(
+                    createFilter(world, update.region),
+                    update.update,
+                    new UpdateOptions().upsert(true)
+            ));
+            affected.add(update.region);
         }
+        for (ProtectedRegion region : removed) {
+            if (listener != null)
+                listener.beforeDatabaseDelete(world, region);
+            requests.add(new DeleteOneModel<ProcessingProtectedRegion>(createDeleteFilter(world, region)));
+            affected.add(region);
+        }
+
+        MongoCollection<ProcessingProtectedRegion> collection = getCollection();
+        List<List<WriteModel<ProcessingProtectedRegion>>> batches = Lists.partition(requests, bulkWriteBatchSize);
+        List<ListenableFuture<BulkWriteResult>> futures = Lists.newArrayListWithCapacity(batches.size());
+        int offset = 0;
+        for (List<WriteModel<ProcessingProtectedRegion>> batch : batches) {
+            int end = offset + batch.size();
+            FutureResultCallback<BulkWriteResult> callback = FutureResultCallback.create(new BulkWriteCallback(
+                    world,
+                    affected.subList(offset, end),
+                    updates.subList(Math.min(offset, updates.size()), Math.min(end, updates.size()))
+            ));
+            collection.bulkWrite(batch, new BulkWriteOptions().ordered(false), callback);
+            futures.add(callback.getFuture());
+            offset = end;
+        }
+        return ConcurrentUtils.allCompleted(futures);
+    }
+
+    private Bson createUpdate(RegionPath path, BsonDocument document) {
+        BsonDocument snapshot = deltaUpdates ? snapshots.get(path) : null;
+        if (snapshot == null)
+            return origin.stamp(new BsonDocument("$set", document));
+        BsonDocument update = UpdateUtils.diff(snapshot, document);
+        if (update.isEmpty())
+            return null;
+        return origin.stamp(UpdateUtils.addSetOnInsert(update, document));
+    }
+
+    private void trackLazily(ProcessingProtectedRegion region, RawBsonDocument document) {
+        RegionPath path = RegionPath.create(region.getWorld(), region.getRegion().getId());
+        fingerprints.remove(path);
+        snapshots.remove(path);
+        loadedDocuments.put(path, document);
+    }
+
+    private void track(ProcessingProtectedRegion region) {
+        RegionPath path = RegionPath.create(region.getWorld(), region.getRegion().getId());
+        loadedDocuments.remove(path);
+        byte[] encoded = encode(region);
+        fingerprints.put(path, fingerprint(encoded));
+        if (deltaUpdates)
+            snapshots.put(path, toDocument(encoded));
+    }
 
-        ConcurrentUtils.safeAwait(waiter);
-        Throwable realLastError = lastError.get();
-        if (realLastError != null)
-            throw new StorageException("An error occurred while saving or updating in MongoDB.", realLastError);
+    private void trackLoaded(RegionPath path) {
+        RawBsonDocument document = loadedDocuments.remove(path);
+        if (document != null)
+            track(database.getCodecRegistry().get(ProcessingProtectedRegion.class).decode(createReader(document), DecoderContext.builder().build()));
+    }
+
+    private void markSaved(RegionPath path, PendingUpdate update) {
+        fingerprints.put(path, update.fingerprint);
+        if (deltaUpdates)
+            snapshots.put(path, update.document);
+    }
+
+    private void forget(RegionPath path) {
+        fingerprints.remove(path);
+        snapshots.remove(path);
+        loadedDocuments.remove(path);
+        knownPaths.remove(path);
+    }
+
+    private void forgetTracked(String world) {
+        for (RegionPath path : Iterables.concat(fingerprints.keySet(), loadedDocuments.keySet(), knownPaths)) {
+            if (world.equals(path.getWorld()))
+                forget(path);
+        }
+        idIndex.removeWorld(world);
+    }
+
+    private byte[] encode(ProcessingProtectedRegion region) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        database.getCodecRegistry().get(ProcessingProtectedRegion.class).encode(new BsonBinaryWriter(buffer), region, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    private static BsonDocument toDocument(byte[] encoded) {
+        return new BsonDocumentCodec().decode(new BsonBinaryReader(ByteBuffer.wrap(encoded)), DecoderContext.builder().build());
+    }
+
+    private static long fingerprint(byte[] encoded) {
+        return FINGERPRINT_FUNCTION.hashBytes(encoded).asLong();
+    }
+
+    private static BsonReader createReader(BsonDocument document) {
+        return document instanceof RawBsonDocument
+                ? new BsonBinaryReader(((RawBsonDocument) document).getByteBuffer().asNIO())
+                : new BsonDocumentReader(document);
+    }
+
+    private ListenableFuture<List<ProcessingProtectedRegion>> loadRegions(Bson filter) {
+        final DecodingBlock block = new DecodingBlock();
+        FutureResultCallback<Void> callback = FutureResultCallback.create();
+        rawCollection.find(filter).batchSize(loadBatchSize).forEach(block, callback);
+        return Futures.transform(callback.getFuture(), new AsyncFunction<Void, List<ProcessingProtectedRegion>>() {
+            @Override
+            public ListenableFuture<List<ProcessingProtectedRegion>> apply(Void input) {
+                return block.finish();
+            }
+        });
+    }
+
+    private static ListenableFuture<List<ProcessingProtectedRegion>> concat(List<ListenableFuture<List<ProcessingProtectedRegion>>> chunks) {
+        return Futures.transform(Futures.allAsList(chunks), new Function<List<List<ProcessingProtectedRegion>>, List<ProcessingProtectedRegion>>() {
+            @Override
+            public List<ProcessingProtectedRegion> apply(List<List<ProcessingProtectedRegion>> input) {
+                int size = 0;
+                for (List<ProcessingProtectedRegion> chunk : input)
+                    size += chunk.size();
+                List<ProcessingProtectedRegion> result = Lists.newArrayListWithCapacity(size);
+                for (List<ProcessingProtectedRegion> chunk : input)
+                    result.addAll(chunk);
+                return result;
+            }
+        });
+    }
+
+    private Set<ProtectedRegion> link(String world, List<ProcessingProtectedRegion> loaded) {
+        Map<String, ProtectedRegion> regions = Maps.newHashMapWithExpectedSize(loaded.size());
+        Map<ProtectedRegion, String> parents = Maps.newHashMapWithExpectedSize(loaded.size());
+        for (ProcessingProtectedRegion region : loaded) {
+            ProtectedRegion protectedRegion = region.getRegion();
+            if (!world.equals(region.getWorld()) || regions.containsKey(protectedRegion.getId()))
+                continue;
+            regions.put(protectedRegion.getId(), protectedRegion);
+            knownPaths.add(RegionPath.create(world, protectedRegion.getId()));
+            String parent = region.getParent();
+            if (parent != null)
+                parents.put(protectedRegion, parent);
+        }
+        RegionDatabaseUtils.relinkParents(regions, parents);
+        return ImmutableSet.copyOf(regions.values());
+    }
+
+    private static <T> T await(ListenableFuture<T> future, String message) throws StorageException {
+        try {
+            return ConcurrentUtils.safeGet(future);
+        } catch (ExecutionException e) {
+            throw new StorageException(message, e.getCause());
+        }
     }
 
     private MongoCollection<ProcessingProtectedRegion> getCollection() {
         return database.getCollection(COLLECTION_NAME, ProcessingProtectedRegion.class);
     }
 
+    private static Bson createFilter(String world, ProtectedRegion region) {
+        return Filters.and(Filters.eq("name", region.getId()), Filters.eq("world", world));
+    }
+
+    private Bson createDeleteFilter(String world, ProtectedRegion region) {
+        ObjectId id = idIndex.getId(world, region.getId());
+        return id != null ? Filters.eq("_id", id) : createFilter(world, region);
+    }
+
     private class UpdateCallback implements SingleResultCallback<ProcessingProtectedRegion> {
 
         private final String world;
+        private final PendingUpdate update;
 
-        public UpdateCallback(String world) {
+        public UpdateCallback(String world, PendingUpdate update) {
             this.world = Preconditions.checkNotNull(world, "world must be not null.");
+            this.update = Preconditions.checkNotNull(update, "update must be not null.");
         }
 
         @Override
         public void onResult(ProcessingProtectedRegion result, Throwable throwable) {
-            idToRegion.put(result.getDatabaseId(), RegionPath.create(result.getWorld(), result.getRegion().getId()));
+            if (result == null)
+                return;
+
+            RegionPath path = RegionPath.create(result.getWorld(), result.getRegion().getId());
+            idIndex.put(result.getDatabaseId(), path.getWorld(), path.getId());
+            markSaved(path, update);
 
             if (listener != null)
                 listener.afterDatabaseUpdate(world, result);
@@ -245,10 +819,139 @@ public class RegionStorageAdapter {
 
         @Override
         public void onResult(ProcessingProtectedRegion result, Throwable throwable) {
-            if (listener != null && result != null)
+            if (result == null)
+                return;
+
+            if (listener != null)
                 listener.afterDatabaseDelete(world, result);
 
-            idToRegion.remove(result.getDatabaseId());
+            idIndex.remove(result.getDatabaseId());
+            forget(RegionPath.create(world, result.getRegion().getId()));
+        }
+    }
+
+    private class BulkWriteCallback implements SingleResultCallback<BulkWriteResult> {
+
+        private final String world;
+        private final List<ProtectedRegion> regions;
+        private final List<PendingUpdate> updates;
+
+        /**
+         * Constructor.
+         *
+         * @param world The name of the world
+         * @param regions The regions in the same order as the requests of the batch
+         * @param updates The leading upsert requests, all following requests are deletes
+         */
+        public BulkWriteCallback(String world, List<ProtectedRegion> regions, List<PendingUpdate> updates) {
+            this.world = Preconditions.checkNotNull(world, "world must be not null.");
+            this.regions = Preconditions.checkNotNull(regions, "regions must be not null.");
+            this.updates = Preconditions.checkNotNull(updates, "updates must be not null.");
+        }
+
+        @Override
+        public void onResult(BulkWriteResult result, Throwable throwable) {
+            Set<Integer> failed = Collections.emptySet();
+            if (throwable instanceof MongoBulkWriteException) {
+                MongoBulkWriteException exception = (MongoBulkWriteException) throwable;
+                result = exception.getWriteResult();
+                failed = Sets.newHashSet();
+                for (BulkWriteError error : exception.getWriteErrors())
+                    failed.add(error.getIndex());
+            }
+            if (result == null)
+                return;
+
+            Map<Integer, ObjectId> upserts = Maps.newHashMap();
+            for (BulkWriteUpsert upsert : result.getUpserts())
+                upserts.put(upsert.getIndex(), upsert.getId().asObjectId().getValue());
+
+            for (int i = 0; i < regions.size(); i++) {
+                if (failed.contains(i))
+                    continue;
+                ProtectedRegion region = regions.get(i);
+                RegionPath path = RegionPath.create(world, region.getId());
+                if (i < updates.size()) {
+                    ObjectId id = upserts.get(i);
+                    if (id != null)
+                        idIndex.put(id, world, region.getId());
+                    markSaved(path, updates.get(i));
+                    if (listener != null)
+                        listener.afterDatabaseUpdate(world, new ProcessingProtectedRegion(region, world));
+                } else {
+                    idIndex.remove(world, region.getId());
+                    forget(path);
+                    if (listener != null)
+                        listener.afterDatabaseDelete(world, new ProcessingProtectedRegion(region, world));
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the raw documents of a query into chunks of {@code loadBatchSize} and decodes every chunk on the
+     * decode executor, while the next documents are still received.
+     */
+    private class DecodingBlock implements Block<RawBsonDocument> {
+
+        private final List<ListenableFuture<List<ProcessingProtectedRegion>>> chunks = Lists.newArrayList();
+        private List<RawBsonDocument> current = Lists.newArrayListWithCapacity(loadBatchSize);
+
+        @Override
+        public void apply(RawBsonDocument document) {
+            current.add(document);
+            if (current.size() >= loadBatchSize) {
+                chunks.add(decodeExecutor.submit(new DecodeTask(current)));
+                current = Lists.newArrayListWithCapacity(loadBatchSize);
+            }
+        }
+
+        public ListenableFuture<List<ProcessingProtectedRegion>> finish() {
+            if (!current.isEmpty())
+                chunks.add(decodeExecutor.submit(new DecodeTask(current)));
+            return concat(chunks);
+        }
+    }
+
+    private class DecodeTask implements Callable<List<ProcessingProtectedRegion>> {
+
+        private final List<? extends BsonDocument> documents;
+
+        public DecodeTask(List<? extends BsonDocument> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        public List<ProcessingProtectedRegion> call() {
+            Codec<ProcessingProtectedRegion> codec = database.getCodecRegistry().get(ProcessingProtectedRegion.class);
+            DecoderContext decoderContext = DecoderContext.builder().build();
+            List<ProcessingProtectedRegion> result = Lists.newArrayListWithCapacity(documents.size());
+            for (BsonDocument document : documents) {
+                ProcessingProtectedRegion region = codec.decode(createReader(document), decoderContext);
+                idIndex.put(region.getDatabaseId(), region.getWorld(), region.getRegion().getId());
+                // Raw documents are kept as they are, the region is only encoded again when it is saved or updated.
+                if (document instanceof RawBsonDocument)
+                    trackLazily(region, (RawBsonDocument) document);
+                else
+                    track(region);
+                result.add(region);
+            }
+            return result;
+        }
+    }
+
+    private static class PendingUpdate {
+
+        private final ProtectedRegion region;
+        private final BsonDocument document;
+        private final long fingerprint;
+        private final Bson update;
+
+        public PendingUpdate(ProtectedRegion region, BsonDocument document, long fingerprint, Bson update) {
+            this.region = region;
+            this.document = document;
+            this.fingerprint = fingerprint;
+            this.update = update;
         }
     }
 
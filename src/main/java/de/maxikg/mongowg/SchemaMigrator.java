@@ -0,0 +1,220 @@
+package de.maxikg.mongowg;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.sk89q.worldedit.BlockVector2D;
+import de.maxikg.mongowg.codec.BlockVector2DCodec;
+import de.maxikg.mongowg.codec.BlockVectorCodec;
+import de.maxikg.mongowg.codec.CompactGeometry;
+import de.maxikg.mongowg.codec.DefaultDomainCodec;
+import de.maxikg.mongowg.codec.ProcessingProtectedRegionCodec;
+import de.maxikg.mongowg.oplog.WriteOrigin;
+import de.maxikg.mongowg.utils.ConcurrentUtils;
+import de.maxikg.mongowg.utils.FutureResultCallback;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonInt32;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.codecs.DecoderContext;
+import org.bson.conversions.Bson;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rewrites region documents in batches to the compact geometry of {@link ProcessingProtectedRegionCodec#SCHEMA_V2}
+ * and, optionally, to binary player ids. Only the converted fields are updated. Every update is conditional on the
+ * fields which were read, so a region which was changed in the meantime is left alone and converted on its next save.
+ */
+public class SchemaMigrator implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(SchemaMigrator.class.getName());
+    private static final String[] GEOMETRY_FIELDS = {"min", "max", "points"};
+    private static final String[] PLAYER_FIELDS = {"owners.players", "members.players"};
+
+    private final MongoCollection<BsonDocument> collection;
+    private final WriteOrigin origin;
+    private final int batchSize;
+    private final boolean compactGeometry;
+    private final boolean binaryUuids;
+    private final List<String> fields = Lists.newArrayList();
+    private final AtomicLong migrated = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * Constructor.
+     *
+     * @param collection The regions collection
+     * @param origin The {@link WriteOrigin} with which the updates are stamped
+     * @param batchSize The number of documents which are read and written per round trip
+     * @param compactGeometry Whether the geometry is converted to {@link ProcessingProtectedRegionCodec#SCHEMA_V2}
+     * @param binaryUuids Whether player ids are converted to binary UUIDs
+     */
+    public SchemaMigrator(MongoCollection<BsonDocument> collection, WriteOrigin origin, int batchSize, boolean compactGeometry, boolean binaryUuids) {
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be greater than 0.");
+        Preconditions.checkArgument(compactGeometry || binaryUuids, "Nothing to migrate.");
+        this.collection = Preconditions.checkNotNull(collection, "collection must be not null.");
+        this.origin = Preconditions.checkNotNull(origin, "origin must be not null.");
+        this.batchSize = batchSize;
+        this.compactGeometry = compactGeometry;
+        this.binaryUuids = binaryUuids;
+        if (compactGeometry)
+            fields.addAll(Arrays.asList(GEOMETRY_FIELDS));
+        if (binaryUuids)
+            fields.addAll(Arrays.asList(PLAYER_FIELDS));
+    }
+
+    /**
+     * Migrates all documents which still have fields in the old representation, until every document was visited or
+     * {@link #stop()} is called.
+     */
+    @Override
+    public void run() {
+        Bson pending = createPendingFilter();
+        Bson projection = Projections.include(fields);
+        BsonValue last = null;
+        try {
+            while (running) {
+                Bson filter = last != null ? Filters.and(Filters.gt("_id", last), pending) : pending;
+                FutureResultCallback<List<BsonDocument>> findCallback = FutureResultCallback.create();
+                collection.find(filter)
+                        .projection(projection)
+                        .sort(Sorts.ascending("_id"))
+                        .limit(batchSize)
+                        .into(Lists.<BsonDocument>newArrayList(), findCallback);
+                List<BsonDocument> batch = ConcurrentUtils.safeGet(findCallback.getFuture());
+                if (batch.isEmpty())
+                    break;
+
+                List<WriteModel<BsonDocument>> requests = Lists.newArrayListWithCapacity(batch.size());
+                for (BsonDocument document : batch) {
+                    last = document.get("_id");
+                    requests.add(new UpdateOneModel<BsonDocument>(createFilter(document), origin.stamp(createUpdate(document, compactGeometry, binaryUuids))));
+                }
+                FutureResultCallback<BulkWriteResult> writeCallback = FutureResultCallback.create();
+                collection.bulkWrite(requests, new BulkWriteOptions().ordered(false), writeCallback);
+                BulkWriteResult result = ConcurrentUtils.safeGet(writeCallback.getFuture());
+                if (result.isModifiedCountAvailable())
+                    migrated.addAndGet(result.getModifiedCount());
+            }
+        } catch (ExecutionException e) {
+            logFailure(e.getCause());
+            return;
+        } catch (RuntimeException e) {
+            logFailure(e);
+            return;
+        }
+        if (running)
+            LOGGER.info("Schema migration finished. " + migrated.get() + " regions were migrated.");
+    }
+
+    /**
+     * Stops the migration after the current batch.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Returns the number of regions which were migrated so far.
+     *
+     * @return The number of migrated regions
+     */
+    public long getMigratedCount() {
+        return migrated.get();
+    }
+
+    private void logFailure(Throwable throwable) {
+        LOGGER.log(Level.SEVERE, "Schema migration failed after " + migrated.get() + " regions. It is resumed on next startup.", throwable);
+    }
+
+    private Bson createPendingFilter() {
+        List<Bson> filters = Lists.newArrayList();
+        if (compactGeometry)
+            filters.add(Filters.ne(ProcessingProtectedRegionCodec.SCHEMA_FIELD, ProcessingProtectedRegionCodec.SCHEMA_V2));
+        if (binaryUuids) {
+            // Matches arrays with at least one string element
+            for (String field : PLAYER_FIELDS)
+                filters.add(Filters.type(field, BsonType.STRING));
+        }
+        return Filters.or(filters);
+    }
+
+    private BsonDocument createFilter(BsonDocument document) {
+        BsonDocument filter = new BsonDocument("_id", document.get("_id"));
+        for (String field : fields) {
+            BsonValue value = getPath(document, field);
+            if (value != null)
+                filter.put(field, value);
+        }
+        return filter;
+    }
+
+    /**
+     * Creates the update which converts the fields of a document. Fields which are already converted are kept.
+     *
+     * @param document The document with the fields to convert
+     * @param compactGeometry Whether the geometry is converted
+     * @param binaryUuids Whether player ids are converted
+     * @return The update
+     */
+    static BsonDocument createUpdate(BsonDocument document, boolean compactGeometry, boolean binaryUuids) {
+        BsonDocument set = new BsonDocument();
+        if (compactGeometry)
+            setCompactGeometry(set, document);
+        if (binaryUuids) {
+            for (String field : PLAYER_FIELDS) {
+                BsonValue players = getPath(document, field);
+                if (players != null && players.isArray())
+                    set.put(field, toBinaryUuids(players.asArray()));
+            }
+        }
+        return new BsonDocument("$set", set);
+    }
+
+    private static void setCompactGeometry(BsonDocument set, BsonDocument document) {
+        set.put(ProcessingProtectedRegionCodec.SCHEMA_FIELD, new BsonInt32(ProcessingProtectedRegionCodec.SCHEMA_V2));
+        for (String field : new String[] {"min", "max"}) {
+            BsonValue value = document.get(field);
+            if (value != null && value.isDocument())
+                set.put(field, CompactGeometry.toArray(BlockVectorCodec.INSTANCE.decode(new BsonDocumentReader(value.asDocument()), DecoderContext.builder().build())));
+        }
+        BsonValue points = document.get("points");
+        if (points != null && points.isArray()) {
+            List<BlockVector2D> vectors = Lists.newArrayListWithCapacity(points.asArray().size());
+            for (BsonValue point : points.asArray())
+                vectors.add(BlockVector2DCodec.INSTANCE.decode(new BsonDocumentReader(point.asDocument()), DecoderContext.builder().build()));
+            set.put("points", CompactGeometry.packPoints(vectors));
+        }
+    }
+
+    private static BsonArray toBinaryUuids(BsonArray players) {
+        BsonArray converted = new BsonArray();
+        for (BsonValue player : players)
+            converted.add(player.isString() ? DefaultDomainCodec.toBinary(UUID.fromString(player.asString().getValue())) : player);
+        return converted;
+    }
+
+    private static BsonValue getPath(BsonDocument document, String path) {
+        int separator = path.indexOf('.');
+        if (separator < 0)
+            return document.get(path);
+        BsonValue parent = document.get(path.substring(0, separator));
+        return parent != null && parent.isDocument() ? parent.asDocument().get(path.substring(separator + 1)) : null;
+    }
+}
@@ -0,0 +1,52 @@
+package de.maxikg.mongowg;
+
+import de.maxikg.mongowg.codec.ValueInterner;
+import de.maxikg.mongowg.oplog.OpLogPipeline;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * The {@code /mongowg} command, which shows runtime statistics of MongoWG.
+ */
+public class StatusCommand implements CommandExecutor {
+
+    private final OpLogApplier applier;
+    private final OpLogPipeline pipeline;
+    private final ValueInterner interner;
+
+    /**
+     * Constructor.
+     *
+     * @param applier The {@link OpLogApplier} or {@code null} if the oplog is not used
+     * @param pipeline The {@link OpLogPipeline} or {@code null} if the oplog is not used
+     * @param interner The {@link ValueInterner} or {@code null} if decoded values are not interned
+     */
+    public StatusCommand(OpLogApplier applier, OpLogPipeline pipeline, ValueInterner interner) {
+        this.applier = applier;
+        this.pipeline = pipeline;
+        this.interner = interner;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (interner != null)
+            sender.sendMessage("Interner hits: " + interner.getHitCount() + " (~" + interner.getDroppedBytes() / 1024 + " KiB of duplicates dropped, cumulative)");
+        if (applier == null) {
+            sender.sendMessage("Oplog: disabled");
+            return true;
+        }
+        sender.sendMessage("Oplog queue depth: " + applier.getQueueDepth());
+        sender.sendMessage("Oplog changes applied: " + applier.getAppliedCount() + " (" + applier.getCollapsedCount() + " collapsed)");
+        sender.sendMessage(String.format("Oplog apply latency: %.2f ms average, %.2f ms max", applier.getAverageLatency(), applier.getMaxLatency()));
+        if (pipeline != null) {
+            sender.sendMessage("Oplog pipeline backlog: " + pipeline.getBacklog());
+            if (pipeline.getSource() != null)
+                sender.sendMessage("Oplog reconnects: " + pipeline.getSource().getReconnectCount());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,196 @@
+package de.maxikg.mongowg;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sk89q.worldguard.protection.managers.storage.StorageException;
+import de.maxikg.mongowg.model.ProcessingProtectedRegion;
+import de.maxikg.mongowg.utils.Backoff;
+import org.bson.types.ObjectId;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects regions which have to be read again after an oplog update and reads them with a single query once the
+ * coalescing window has passed. Repeated updates of the same region within one window result in a single read. The
+ * read regions are handed to the {@link OpLogApplier} in the order of their first update. If a read fails, its regions
+ * are read again with backoff, up to {@link #MAX_RETRIES} times in a row.
+ */
+public class UpdateCoalescer {
+
+    private static final Logger LOGGER = Logger.getLogger(UpdateCoalescer.class.getName());
+    private static final long RETRY_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The number of consecutive failed reads after which the regions of a read are dropped.
+     */
+    public static final int MAX_RETRIES = 10;
+
+    private final Object lock = new Object();
+    private final Set<ObjectId> pending = Sets.newLinkedHashSet();
+    private final Set<ObjectId> deleted = Sets.newHashSet();
+    private final Backoff backoff = new Backoff(RETRY_DELAY, MAX_RETRY_DELAY);
+    private final RegionStorageAdapter storageAdapter;
+    private final OpLogApplier applier;
+    private final long window;
+    private final ScheduledExecutorService executor;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private Set<ObjectId> inFlight = ImmutableSet.of();
+    private int failures;
+
+    /**
+     * Constructor.
+     *
+     * @param storageAdapter The {@link RegionStorageAdapter} from which the regions are read
+     * @param applier The {@link OpLogApplier} which applies the read regions to WorldGuard
+     * @param window The time in milliseconds in which updates are collected before the regions are read
+     */
+    public UpdateCoalescer(RegionStorageAdapter storageAdapter, OpLogApplier applier, long window) {
+        Preconditions.checkArgument(window > 0, "window must be greater than 0.");
+        this.storageAdapter = Preconditions.checkNotNull(storageAdapter, "storageAdapter must be not null.");
+        this.applier = Preconditions.checkNotNull(applier, "applier must be not null.");
+        this.window = window;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("MongoWG Update Coalescer")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Enqueues a region which should be read again. The read is scheduled if it is the first region of a window.
+     *
+     * @param id The {@link ObjectId} of the updated region
+     */
+    public void enqueue(ObjectId id) {
+        synchronized (lock) {
+            boolean first = pending.isEmpty();
+            pending.add(id);
+            if (first && !executor.isShutdown())
+                executor.schedule(flushTask, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Enqueues a region only if it is already pending or currently read. Later updates of such a region must not be
+     * applied to its local state, because that state misses the update which is waiting for the read. A region which is
+     * currently read is read again afterwards, because the running read may miss the later update.
+     *
+     * @param id The {@link ObjectId} of the updated region
+     * @return {@code true} if the region is read by this coalescer, {@code false} if it isn't pending or read
+     */
+    public boolean enqueueIfPending(ObjectId id) {
+        synchronized (lock) {
+            if (pending.contains(id))
+                return true;
+            if (!inFlight.contains(id))
+                return false;
+            enqueue(id);
+            return true;
+        }
+    }
+
+    /**
+     * Discards a pending read of a deleted region. A region which is currently read is dropped from the result, so
+     * it cannot be applied after its deletion.
+     *
+     * @param id The {@link ObjectId} of the deleted region
+     */
+    public void cancel(ObjectId id) {
+        synchronized (lock) {
+            pending.remove(id);
+            if (inFlight.contains(id))
+                deleted.add(id);
+        }
+    }
+
+    /**
+     * Returns the number of regions which wait to be read.
+     *
+     * @return The number of pending regions
+     */
+    public int size() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Reads all pending regions and hands them to the {@link OpLogApplier}.
+     */
+    public void flush() {
+        Set<ObjectId> ids;
+        synchronized (lock) {
+            if (pending.isEmpty())
+                return;
+            ids = ImmutableSet.copyOf(pending);
+            pending.clear();
+            inFlight = ids;
+        }
+
+        Map<ObjectId, ProcessingProtectedRegion> regions = null;
+        Exception error = null;
+        try {
+            regions = storageAdapter.loadByIds(ids);
+        } catch (StorageException | RuntimeException e) {
+            error = e;
+        }
+
+        synchronized (lock) {
+            if (regions != null) {
+                failures = 0;
+                backoff.reset();
+                for (ObjectId id : ids) {
+                    ProcessingProtectedRegion region = regions.get(id);
+                    if (region != null && !deleted.contains(id))
+                        applier.enqueueUpdate(region);
+                }
+            } else if (++failures <= MAX_RETRIES) {
+                requeue(ids);
+                long delay = backoff.nextDelay();
+                LOGGER.log(Level.WARNING, "Cannot read " + ids.size() + " updated regions. Retrying in " + delay + " ms ("
+                        + failures + " of " + MAX_RETRIES + " attempts).", error);
+                if (!executor.isShutdown())
+                    executor.schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+            } else {
+                LOGGER.log(Level.SEVERE, "Cannot read " + ids.size() + " updated regions after " + MAX_RETRIES
+                        + " attempts. They keep their local state until they are reloaded.", error);
+                failures = 0;
+                backoff.reset();
+            }
+            inFlight = ImmutableSet.of();
+            deleted.clear();
+        }
+    }
+
+    private void requeue(Set<ObjectId> ids) {
+        // The failed regions were updated first, so they stay in front of regions which were enqueued meanwhile.
+        Set<ObjectId> requeued = Sets.newLinkedHashSet();
+        for (ObjectId id : ids) {
+            if (!deleted.contains(id))
+                requeued.add(id);
+        }
+        requeued.addAll(pending);
+        pending.clear();
+        pending.addAll(requeued);
+    }
+
+    /**
+     * Stops the scheduled reads. Pending regions are discarded.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -1,10 +1,6 @@
 package de.maxikg.mongowg;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Sets;
-import com.sk89q.worldguard.bukkit.WorldGuardPlugin;
-import com.sk89q.worldguard.protection.managers.RegionManager;
-import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import de.maxikg.mongowg.model.ProcessingProtectedRegion;
 import de.maxikg.mongowg.oplog.OpLogHandler;
 import org.bson.BsonDocument;
@@ -12,68 +8,44 @@ import org.bson.BsonDocumentReader;
 import org.bson.codecs.Codec;
 import org.bson.codecs.DecoderContext;
 import org.bson.types.ObjectId;
-import org.bukkit.World;
 
-import java.util.Collections;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Acts as a bridge between {@link RegionStorageAdapter} and {@link de.maxikg.mongowg.oplog.OpLogParser}.
+ * Acts as a bridge between {@link RegionStorageAdapter} and {@link de.maxikg.mongowg.oplog.OpLogParser}. Changes
+ * written by this server are expected to be dropped by the retriever using the {@link RegionStorageAdapter}'s
+ * {@link de.maxikg.mongowg.oplog.WriteOrigin}.
  */
-public class WorldGuardOpLogHandler implements OpLogHandler, RegionStorageListener {
+public class WorldGuardOpLogHandler implements OpLogHandler {
 
     private static final Logger LOGGER = Logger.getLogger(WorldGuardOpLogHandler.class.getName());
 
-    private final Set<RegionStorageAdapter.RegionPath> ignoreChanges = Collections.synchronizedSet(Sets.<RegionStorageAdapter.RegionPath>newHashSet());
     private final Codec<ProcessingProtectedRegion> processingProtectedRegionCodec;
     private final RegionStorageAdapter storageAdapter;
-    private final WorldGuardPlugin worldGuard;
+    private final OpLogApplier applier;
+    private UpdateCoalescer coalescer;
 
     /**
      * Constructor.
      *
      * @param processingProtectedRegionCodec The {@link Codec} which should be used to decode {@link ProcessingProtectedRegion}s
      * @param storageAdapter The {@link RegionStorageAdapter} to which the oplog changes should be applied
-     * @param worldGuard The {@link WorldGuardPlugin} instance
+     * @param applier The {@link OpLogApplier} which applies the changes to WorldGuard
      */
-    public WorldGuardOpLogHandler(Codec<ProcessingProtectedRegion> processingProtectedRegionCodec, RegionStorageAdapter storageAdapter, WorldGuardPlugin worldGuard) {
+    public WorldGuardOpLogHandler(Codec<ProcessingProtectedRegion> processingProtectedRegionCodec, RegionStorageAdapter storageAdapter, OpLogApplier applier) {
         this.processingProtectedRegionCodec = Preconditions.checkNotNull(processingProtectedRegionCodec, "processingProtectedRegionCodec must be not null.");
         this.storageAdapter = Preconditions.checkNotNull(storageAdapter, "storageAdapter must be not null.");
-        this.worldGuard = Preconditions.checkNotNull(worldGuard, "worldGuard must be not null.");
+        this.applier = Preconditions.checkNotNull(applier, "applier must be not null.");
     }
 
     /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void beforeDatabaseUpdate(String world, ProtectedRegion region) {
-        ignoreChanges.add(RegionStorageAdapter.RegionPath.create(world, region.getId()));
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void afterDatabaseUpdate(String world, ProcessingProtectedRegion result) {
-        ignoreChanges.remove(RegionStorageAdapter.RegionPath.create(world, result.getRegion().getId()));
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void beforeDatabaseDelete(String world, ProtectedRegion region) {
-        ignoreChanges.add(RegionStorageAdapter.RegionPath.create(world, region.getId()));
-    }
-
-    /**
-     * {@inheritDoc}
+     * Set's the {@link UpdateCoalescer} which reads regions again after updates which cannot be applied locally.
+     *
+     * @param coalescer The {@link UpdateCoalescer} or {@code null} to read every region immediately
      */
-    @Override
-    public void afterDatabaseDelete(String world, ProcessingProtectedRegion result) {
-        ignoreChanges.remove(RegionStorageAdapter.RegionPath.create(world, result.getRegion().getId()));
+    public void setCoalescer(UpdateCoalescer coalescer) {
+        this.coalescer = coalescer;
     }
 
     /**
@@ -81,36 +53,28 @@ public class WorldGuardOpLogHandler implements OpLogHandler, RegionStorageListen
      */
     @Override
     public void onCreate(BsonDocument createdDocument) {
-        RegionStorageAdapter.RegionPath path = RegionStorageAdapter.RegionPath.create(createdDocument.getString("world").getValue() , createdDocument.getString("name").getValue());
-        if (checkIsIgnored(path))
-            return;
-        RegionManager regionManager = getRegionManager(path);
-        if (regionManager != null)
-            regionManager.addRegion(read(createdDocument).getRegion());
+        ProcessingProtectedRegion region = read(createdDocument);
+        // Registered before it is applied, so a following delete or update can be resolved.
+        storageAdapter.register(region);
+        applier.enqueueUpdate(region);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void onUpdate(ObjectId updatedObject) {
-        ProcessingProtectedRegion region = storageAdapter.load(updatedObject);
-        ProtectedRegion protectedRegion = region.getRegion();
-        if (checkIsIgnored(RegionStorageAdapter.RegionPath.create(region.getWorld(), protectedRegion.getId())))
+    public void onUpdate(ObjectId updatedObject, BsonDocument update) {
+        if (coalescer != null && coalescer.enqueueIfPending(updatedObject))
+            return;
+        ProcessingProtectedRegion region = storageAdapter.applyUpdate(updatedObject, update);
+        if (region == null && coalescer != null) {
+            coalescer.enqueue(updatedObject);
             return;
-        RegionManager regionManager = getRegionManager(region.getWorld());
-        if (regionManager != null) {
-            regionManager.removeRegion(protectedRegion.getId());
-            regionManager.addRegion(protectedRegion);
-            String parent = region.getParent();
-            if (parent != null) {
-                try {
-                    protectedRegion.setParent(regionManager.getRegion(parent));
-                } catch (ProtectedRegion.CircularInheritanceException ignore) {
-                    LOGGER.warning("Circular inheritance for region " + protectedRegion.getId() + " of world " + region.getWorld() + ".");
-                }
-            }
         }
+        if (region == null)
+            region = storageAdapter.load(updatedObject);
+        if (region != null)
+            applier.enqueueUpdate(region);
     }
 
     /**
@@ -118,10 +82,11 @@ public class WorldGuardOpLogHandler implements OpLogHandler, RegionStorageListen
      */
     @Override
     public void onDelete(ObjectId deletedObject) {
+        if (coalescer != null)
+            coalescer.cancel(deletedObject);
         RegionStorageAdapter.RegionPath path = storageAdapter.resolvePath(deletedObject);
-        RegionManager regionManager = getRegionManager(path);
-        if (regionManager != null)
-            regionManager.removeRegion(path.getId());
+        if (path != null)
+            applier.enqueueDelete(path);
     }
 
     /**
@@ -135,22 +100,4 @@ public class WorldGuardOpLogHandler implements OpLogHandler, RegionStorageListen
     private ProcessingProtectedRegion read(BsonDocument document) {
         return processingProtectedRegionCodec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
     }
-
-    private RegionManager getRegionManager(RegionStorageAdapter.RegionPath path) {
-        return getRegionManager(path.getWorld());
-    }
-
-    private RegionManager getRegionManager(String worldName) {
-        World world = worldGuard.getServer().getWorld(worldName);
-        if (world != null)
-            return worldGuard.getRegionManager(world);
-        return null;
-    }
-
-    private boolean checkIsIgnored(RegionStorageAdapter.RegionPath path) {
-        boolean contains = ignoreChanges.contains(path);
-        if (contains)
-            ignoreChanges.remove(path);
-        return contains;
-    }
 }
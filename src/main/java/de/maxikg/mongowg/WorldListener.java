@@ -0,0 +1,35 @@
+package de.maxikg.mongowg;
+
+import com.google.common.base.Preconditions;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/**
+ * Releases the state of {@link RegionStorageAdapter} for unloaded worlds.
+ */
+public class WorldListener implements Listener {
+
+    private final RegionStorageAdapter storageAdapter;
+
+    /**
+     * Constructor.
+     *
+     * @param storageAdapter The {@link RegionStorageAdapter}
+     */
+    public WorldListener(RegionStorageAdapter storageAdapter) {
+        this.storageAdapter = Preconditions.checkNotNull(storageAdapter, "storageAdapter must be not null.");
+    }
+
+    /**
+     * Called after a world was unloaded. Runs on {@link EventPriority#MONITOR}, so WorldGuard has already saved the
+     * regions of the world.
+     *
+     * @param event The {@link WorldUnloadEvent}
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        storageAdapter.unloadWorld(event.getWorld().getName());
+    }
+}
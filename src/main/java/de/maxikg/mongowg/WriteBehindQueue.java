@@ -0,0 +1,202 @@
+package de.maxikg.mongowg;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sk89q.worldguard.protection.managers.RegionDifference;
+import com.sk89q.worldguard.protection.managers.storage.StorageException;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects region changes and writes them to the database in background. Only the latest change per region is kept,
+ * so repeated edits of the same region within one flush interval result in a single write.
+ */
+public class WriteBehindQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindQueue.class.getName());
+
+    private final ConcurrentMap<RegionStorageAdapter.RegionPath, PendingChange> pending = Maps.newConcurrentMap();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean closed;
+    private final RegionStorageAdapter storageAdapter;
+    private final long flushInterval;
+    private final int flushThreshold;
+    private final ScheduledExecutorService executor;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (StorageException e) {
+                LOGGER.log(Level.SEVERE, "An error occurred while flushing region changes. They will be retried on next flush.", e);
+            }
+        }
+    };
+    private final Runnable thresholdFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            // Cleared before flushing, so changes which are enqueued during the flush can schedule the next one.
+            flushScheduled.set(false);
+            flushTask.run();
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param storageAdapter The {@link RegionStorageAdapter} to which the changes should be written
+     * @param flushInterval The interval in milliseconds in which pending changes are written
+     * @param flushThreshold The number of pending regions which triggers an immediate flush
+     */
+    public WriteBehindQueue(RegionStorageAdapter storageAdapter, long flushInterval, int flushThreshold) {
+        Preconditions.checkArgument(flushInterval > 0, "flushInterval must be greater than 0.");
+        Preconditions.checkArgument(flushThreshold > 0, "flushThreshold must be greater than 0.");
+        this.storageAdapter = Preconditions.checkNotNull(storageAdapter, "storageAdapter must be not null.");
+        this.flushInterval = flushInterval;
+        this.flushThreshold = flushThreshold;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("MongoWG Write-Behind")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Starts the periodic flush.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the number of regions with pending changes.
+     *
+     * @return The number of pending regions
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Enqueues the given {@link RegionDifference}. Pending changes of the same regions are replaced. After
+     * {@link #close()} the changes are written immediately.
+     *
+     * @param world The name of the world
+     * @param regionDifference The {@link RegionDifference} which should be written
+     * @throws StorageException Thrown if the queue is closed and the changes cannot be written
+     */
+    public void enqueue(String world, RegionDifference regionDifference) throws StorageException {
+        for (ProtectedRegion region : regionDifference.getChanged())
+            pending.put(RegionStorageAdapter.RegionPath.create(world, region.getId()), new PendingChange(region, false));
+        for (ProtectedRegion region : regionDifference.getRemoved())
+            pending.put(RegionStorageAdapter.RegionPath.create(world, region.getId()), new PendingChange(region, true));
+        // Checked after the changes were added, so they are written either by the final flush of close() or here.
+        if (closed) {
+            flush();
+            return;
+        }
+        // At most one threshold flush is queued, so a burst of edits doesn't queue a flush per edit.
+        if (pending.size() >= flushThreshold && !executor.isShutdown() && flushScheduled.compareAndSet(false, true))
+            executor.execute(thresholdFlushTask);
+    }
+
+    /**
+     * Writes all pending changes.
+     *
+     * @throws StorageException Thrown if something goes wrong during database query
+     */
+    public void flush() throws StorageException {
+        flush(null);
+    }
+
+    /**
+     * Writes all pending changes of the specified world.
+     *
+     * @param world The name of the world or {@code null} for all worlds
+     * @throws StorageException Thrown if something goes wrong during database query
+     */
+    public void flush(String world) throws StorageException {
+        synchronized (flushLock) {
+            Map<String, Set<ProtectedRegion>> changed = Maps.newHashMap();
+            Map<String, Set<ProtectedRegion>> removed = Maps.newHashMap();
+            for (Map.Entry<RegionStorageAdapter.RegionPath, PendingChange> entry : pending.entrySet()) {
+                RegionStorageAdapter.RegionPath path = entry.getKey();
+                PendingChange change = entry.getValue();
+                if ((world != null && !world.equals(path.getWorld())) || !pending.remove(path, change))
+                    continue;
+                getOrCreate(changed, path.getWorld());
+                getOrCreate(removed, path.getWorld());
+                getOrCreate(change.removed ? removed : changed, path.getWorld()).add(change.region);
+            }
+
+            StorageException lastError = null;
+            for (Map.Entry<String, Set<ProtectedRegion>> entry : changed.entrySet()) {
+                String currentWorld = entry.getKey();
+                Set<ProtectedRegion> currentRemoved = removed.get(currentWorld);
+                try {
+                    storageAdapter.saveChanges(currentWorld, new RegionDifference(entry.getValue(), currentRemoved));
+                } catch (StorageException e) {
+                    lastError = e;
+                    requeue(currentWorld, entry.getValue(), false);
+                    requeue(currentWorld, currentRemoved, true);
+                }
+            }
+            if (lastError != null)
+                throw lastError;
+        }
+    }
+
+    /**
+     * Stops the periodic flush and writes all pending changes. Changes which are enqueued afterwards are written
+     * immediately.
+     *
+     * @throws StorageException Thrown if the pending changes cannot be written
+     */
+    public void close() throws StorageException {
+        closed = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void requeue(String world, Set<ProtectedRegion> regions, boolean removed) {
+        // Newer changes which were enqueued during the failed write take precedence.
+        for (ProtectedRegion region : regions)
+            pending.putIfAbsent(RegionStorageAdapter.RegionPath.create(world, region.getId()), new PendingChange(region, removed));
+    }
+
+    private static Set<ProtectedRegion> getOrCreate(Map<String, Set<ProtectedRegion>> map, String world) {
+        Set<ProtectedRegion> set = map.get(world);
+        if (set == null) {
+            set = Sets.newHashSet();
+            map.put(world, set);
+        }
+        return set;
+    }
+
+    private static class PendingChange {
+
+        private final ProtectedRegion region;
+        private final boolean removed;
+
+        public PendingChange(ProtectedRegion region, boolean removed) {
+            this.region = region;
+            this.removed = removed;
+        }
+    }
+}
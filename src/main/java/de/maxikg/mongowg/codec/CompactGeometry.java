@@ -0,0 +1,103 @@
+package de.maxikg.mongowg.codec;
+
+import com.google.common.base.Preconditions;
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.BlockVector2D;
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonInt32;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geometry representation of the v2 region schema. Vectors are stored as int arrays {@code [x, y, z]} and polygon
+ * points as one binary blob of little endian int32 pairs {@code x, z}, which avoids the repeated field names of the
+ * v1 sub documents.
+ */
+public class CompactGeometry {
+
+    private static final int POINT_SIZE = 8;
+
+    private CompactGeometry() {
+    }
+
+    /**
+     * Writes a vector as int array.
+     *
+     * @param writer The {@link BsonWriter}
+     * @param vector The {@link BlockVector}
+     */
+    public static void writeVector(BsonWriter writer, BlockVector vector) {
+        writer.writeStartArray();
+        writer.writeInt32(vector.getBlockX());
+        writer.writeInt32(vector.getBlockY());
+        writer.writeInt32(vector.getBlockZ());
+        writer.writeEndArray();
+    }
+
+    /**
+     * Reads a vector which was written by {@link #writeVector(BsonWriter, BlockVector)}.
+     *
+     * @param reader The {@link BsonReader}
+     * @return The {@link BlockVector}
+     */
+    public static BlockVector readVector(BsonReader reader) {
+        reader.readStartArray();
+        int x = reader.readInt32();
+        int y = reader.readInt32();
+        int z = reader.readInt32();
+        reader.readEndArray();
+        return new BlockVector(x, y, z);
+    }
+
+    /**
+     * Converts a vector to its int array.
+     *
+     * @param vector The {@link BlockVector}
+     * @return The {@link BsonArray}
+     */
+    public static BsonArray toArray(BlockVector vector) {
+        BsonArray array = new BsonArray();
+        array.add(new BsonInt32(vector.getBlockX()));
+        array.add(new BsonInt32(vector.getBlockY()));
+        array.add(new BsonInt32(vector.getBlockZ()));
+        return array;
+    }
+
+    /**
+     * Packs polygon points into one binary blob.
+     *
+     * @param points The points
+     * @return The {@link BsonBinary}
+     */
+    public static BsonBinary packPoints(List<BlockVector2D> points) {
+        ByteBuffer buffer = ByteBuffer.allocate(points.size() * POINT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (BlockVector2D point : points) {
+            buffer.putInt(point.getBlockX());
+            buffer.putInt(point.getBlockZ());
+        }
+        return new BsonBinary(buffer.array());
+    }
+
+    /**
+     * Unpacks polygon points which were packed by {@link #packPoints(List)}.
+     *
+     * @param binary The {@link BsonBinary}
+     * @return The points
+     * @throws IllegalArgumentException Thrown, if the length of the blob is not a multiple of a point
+     */
+    public static List<BlockVector2D> unpackPoints(BsonBinary binary) {
+        byte[] data = binary.getData();
+        Preconditions.checkArgument(data.length % POINT_SIZE == 0, "points must be a multiple of " + POINT_SIZE + " bytes.");
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        List<BlockVector2D> points = new ArrayList<>(data.length / POINT_SIZE);
+        while (buffer.hasRemaining())
+            points.add(new BlockVector2D(buffer.getInt(), buffer.getInt()));
+        return points;
+    }
+}
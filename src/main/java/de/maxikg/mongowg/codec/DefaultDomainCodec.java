@@ -1,7 +1,8 @@
 package de.maxikg.mongowg.codec;
 
-import com.sk89q.worldedit.BlockVector2D;
 import com.sk89q.worldguard.domains.DefaultDomain;
+import org.bson.BsonBinary;
+import org.bson.BsonBinarySubType;
 import org.bson.BsonReader;
 import org.bson.BsonType;
 import org.bson.BsonWriter;
@@ -9,18 +10,52 @@ import org.bson.codecs.Codec;
 import org.bson.codecs.DecoderContext;
 import org.bson.codecs.EncoderContext;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 /**
- * {@link Codec} for {@link DefaultDomain}.
+ * {@link Codec} for {@link DefaultDomain}. Players are read from UUID strings as well as from binary UUIDs, regardless
+ * of the representation which is written.
  */
 public class DefaultDomainCodec implements Codec<DefaultDomain> {
 
     /**
-     * Static global instance.
+     * Static global instance, which writes players as UUID strings.
      */
     public static final DefaultDomainCodec INSTANCE = new DefaultDomainCodec();
 
+    private final boolean binaryUuids;
+    private final ValueInterner interner;
+
+    /**
+     * Constructor for {@code DefaultDomainCodec} which writes players as UUID strings.
+     */
+    public DefaultDomainCodec() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param binaryUuids {@code true} to write players as binary UUIDs (subtype 4), {@code false} to write them as
+     *                    strings
+     */
+    public DefaultDomainCodec(boolean binaryUuids) {
+        this(binaryUuids, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param binaryUuids {@code true} to write players as binary UUIDs (subtype 4), {@code false} to write them as
+     *                    strings
+     * @param interner The {@link ValueInterner} for decoded player ids and group names or {@code null}
+     */
+    public DefaultDomainCodec(boolean binaryUuids, ValueInterner interner) {
+        this.binaryUuids = binaryUuids;
+        this.interner = interner;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -34,12 +69,12 @@ public class DefaultDomainCodec implements Codec<DefaultDomain> {
             if ("players".equals(name)) {
                 reader.readStartArray();
                 while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
-                    domain.addPlayer(UUID.fromString(reader.readString()));
+                    domain.addPlayer(intern(readUuid(reader)));
                 reader.readEndArray();
             } else if ("groups".equals(name)) {
                 reader.readStartArray();
                 while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
-                    domain.addGroup(reader.readString());
+                    domain.addGroup(intern(reader.readString()));
                 reader.readEndArray();
             } else {
                 reader.skipValue();
@@ -58,8 +93,12 @@ public class DefaultDomainCodec implements Codec<DefaultDomain> {
         writer.writeStartDocument();
         writer.writeName("players");
         writer.writeStartArray();
-        for (UUID uuid : value.getUniqueIds())
-            writer.writeString(uuid.toString());
+        for (UUID uuid : value.getUniqueIds()) {
+            if (binaryUuids)
+                writer.writeBinaryData(toBinary(uuid));
+            else
+                writer.writeString(uuid.toString());
+        }
         writer.writeEndArray();
         writer.writeName("groups");
         writer.writeStartArray();
@@ -76,4 +115,40 @@ public class DefaultDomainCodec implements Codec<DefaultDomain> {
     public Class<DefaultDomain> getEncoderClass() {
         return DefaultDomain.class;
     }
+
+    /**
+     * Returns whether players are written as binary UUIDs.
+     *
+     * @return {@code true} if players are written as binary UUIDs, {@code false} if as strings
+     */
+    public boolean isBinaryUuids() {
+        return binaryUuids;
+    }
+
+    /**
+     * Converts an {@link UUID} to its standard binary representation (subtype 4, big endian).
+     *
+     * @param uuid The {@link UUID}
+     * @return The {@link BsonBinary}
+     */
+    public static BsonBinary toBinary(UUID uuid) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        return new BsonBinary(BsonBinarySubType.UUID_STANDARD, buffer.array());
+    }
+
+    private <T> T intern(T value) {
+        return interner != null ? interner.intern(value) : value;
+    }
+
+    private static UUID readUuid(BsonReader reader) {
+        if (reader.getCurrentBsonType() != BsonType.BINARY)
+            return UUID.fromString(reader.readString());
+        BsonBinary binary = reader.readBinaryData();
+        if (binary.getType() != BsonBinarySubType.UUID_STANDARD.getValue() || binary.getData().length != 16)
+            throw new IllegalArgumentException("Unsupported binary player id of subtype " + binary.getType() + ".");
+        ByteBuffer buffer = ByteBuffer.wrap(binary.getData());
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
 }
@@ -1,7 +1,10 @@
 package de.maxikg.mongowg.codec;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.sk89q.worldedit.BlockVector;
 import com.sk89q.worldedit.BlockVector2D;
 import com.sk89q.worldguard.domains.DefaultDomain;
@@ -23,27 +26,94 @@ import org.bson.codecs.EncoderContext;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.types.ObjectId;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
- * {@link Codec} for {@link ProcessingProtectedRegion}.
+ * {@link Codec} for {@link ProcessingProtectedRegion}. Documents of both schema versions can be read, regardless of the
+ * version which is written.
  */
 public class ProcessingProtectedRegionCodec implements Codec<ProcessingProtectedRegion> {
 
     /**
-     * Static global instance.
+     * Schema which stores vectors and polygon points as sub documents. Documents of this schema have no schema field.
      */
+    public static final int SCHEMA_V1 = 1;
+
+    /**
+     * Schema which stores geometry in the compact form of {@link CompactGeometry}.
+     */
+    public static final int SCHEMA_V2 = 2;
+
+    /**
+     * Name of the field which holds the schema version of a document.
+     */
+    public static final String SCHEMA_FIELD = "schema";
+
+    private static final Ordering<Flag<?>> FLAG_ORDER = Ordering.<String>natural().onResultOf(new Function<Flag<?>, String>() {
+        @Override
+        public String apply(Flag<?> input) {
+            return input.getName();
+        }
+    });
+
+    private static final Map<String, Field> FIELDS;
+    private static final int INITIAL_POINTS_CAPACITY = 8;
+
+    static {
+        ImmutableMap.Builder<String, Field> fields = ImmutableMap.builder();
+        for (Field field : Field.values())
+            fields.put(field.name, field);
+        FIELDS = fields.build();
+    }
+
     private final CodecRegistry registry;
+    private final Codec<BlockVector> blockVectorCodec;
+    private final Codec<BlockVector2D> blockVector2DCodec;
+    private final Codec<Document> documentCodec;
+    private final Codec<DefaultDomain> defaultDomainCodec;
+    private final int schema;
+    private final ValueInterner interner;
 
     /**
-     * Constructor for {@code ProcessingProtectedRegionCodec}.
+     * Constructor for {@code ProcessingProtectedRegionCodec} which writes {@link #SCHEMA_V1}.
      *
      * @param registry The {@link CodecRegistry} which should be used
      */
     public ProcessingProtectedRegionCodec(CodecRegistry registry) {
-        this.registry = registry;
+        this(registry, SCHEMA_V1);
+    }
+
+    /**
+     * Constructor for {@code ProcessingProtectedRegionCodec}. The sub codecs are looked up once, so the registry must
+     * already contain them.
+     *
+     * @param registry The {@link CodecRegistry} which should be used
+     * @param schema The schema version which is written, either {@link #SCHEMA_V1} or {@link #SCHEMA_V2}
+     */
+    public ProcessingProtectedRegionCodec(CodecRegistry registry, int schema) {
+        this(registry, schema, null);
+    }
+
+    /**
+     * Constructor for {@code ProcessingProtectedRegionCodec}. The sub codecs are looked up once, so the registry must
+     * already contain them.
+     *
+     * @param registry The {@link CodecRegistry} which should be used
+     * @param schema The schema version which is written, either {@link #SCHEMA_V1} or {@link #SCHEMA_V2}
+     * @param interner The {@link ValueInterner} for decoded world names, parent names and flag values or {@code null}
+     */
+    public ProcessingProtectedRegionCodec(CodecRegistry registry, int schema, ValueInterner interner) {
+        Preconditions.checkArgument(schema == SCHEMA_V1 || schema == SCHEMA_V2, "Unknown schema version: " + schema);
+        this.schema = schema;
+        this.interner = interner;
+        this.registry = Preconditions.checkNotNull(registry, "registry must be not null.");
+        this.blockVectorCodec = registry.get(BlockVector.class);
+        this.blockVector2DCodec = registry.get(BlockVector2D.class);
+        this.documentCodec = registry.get(Document.class);
+        this.defaultDomainCodec = registry.get(DefaultDomain.class);
     }
 
     /**
@@ -61,48 +131,73 @@ public class ProcessingProtectedRegionCodec implements Codec<ProcessingProtected
         Integer minY = null;
         BlockVector max = null;
         Integer maxY = null;
-        List<BlockVector2D> points = Lists.newArrayList();
+        List<BlockVector2D> points = Collections.emptyList();
         Map<String, Object> flags = Collections.emptyMap();
         DefaultDomain owners = null;
         DefaultDomain members = null;
 
         reader.readStartDocument();
         while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
-            String name = reader.readName();
-            if ("_id".equals(name)) {
-                objectId = reader.readObjectId();
-            } else if ("name".equals(name)) {
-                id = reader.readString();
-            } else if ("world".equals(name)) {
-                world = reader.readString();
-            } else if ("parent".equals(name)) {
-                parent = readStringOrNull(reader);
-            } else if ("priority".equals(name)) {
-                priority = reader.readInt32();
-            } else if ("type".equals(name)) {
-                type = RegionType.valueOf(reader.readString());
-            } else if ("max".equals(name)) {
-                max = registry.get(BlockVector.class).decode(reader, decoderContext);
-            } else if ("max_y".equals(name)) {
-                maxY = reader.readInt32();
-            } else if ("min".equals(name)) {
-                min = registry.get(BlockVector.class).decode(reader, decoderContext);
-            } else if ("min_y".equals(name)) {
-                minY = reader.readInt32();
-            } else if ("flags".equals(name)) {
-                flags = registry.get(Document.class).decode(reader, decoderContext);
-            } else if ("points".equals(name)) {
-                Codec<BlockVector2D> vector2DCodec = registry.get(BlockVector2D.class);
-                reader.readStartArray();
-                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
-                    points.add(vector2DCodec.decode(reader, decoderContext));
-                reader.readEndArray();
-            } else if ("owners".equals(name)) {
-                owners = registry.get(DefaultDomain.class).decode(reader, decoderContext);
-            } else if ("members".equals(name)) {
-                members = registry.get(DefaultDomain.class).decode(reader, decoderContext);
-            } else {
+            Field field = FIELDS.get(reader.readName());
+            if (field == null) {
                 reader.skipValue();
+                continue;
+            }
+            switch (field) {
+                case ID:
+                    objectId = reader.readObjectId();
+                    break;
+                case NAME:
+                    id = reader.readString();
+                    break;
+                case WORLD:
+                    world = intern(reader.readString());
+                    break;
+                case PARENT:
+                    parent = intern(readStringOrNull(reader));
+                    break;
+                case PRIORITY:
+                    priority = reader.readInt32();
+                    break;
+                case TYPE:
+                    type = RegionType.valueOf(reader.readString());
+                    break;
+                case MAX:
+                    max = readVector(reader, decoderContext);
+                    break;
+                case MAX_Y:
+                    maxY = reader.readInt32();
+                    break;
+                case MIN:
+                    min = readVector(reader, decoderContext);
+                    break;
+                case MIN_Y:
+                    minY = reader.readInt32();
+                    break;
+                case FLAGS:
+                    flags = documentCodec.decode(reader, decoderContext);
+                    break;
+                case POINTS:
+                    if (reader.getCurrentBsonType() == BsonType.BINARY) {
+                        points = CompactGeometry.unpackPoints(reader.readBinaryData());
+                        break;
+                    }
+                    // BSON arrays don't carry their length, so the list starts with the size of typical polygons.
+                    points = Lists.newArrayListWithCapacity(INITIAL_POINTS_CAPACITY);
+                    reader.readStartArray();
+                    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+                        points.add(blockVector2DCodec.decode(reader, decoderContext));
+                    reader.readEndArray();
+                    break;
+                case OWNERS:
+                    owners = defaultDomainCodec.decode(reader, decoderContext);
+                    break;
+                case MEMBERS:
+                    members = defaultDomainCodec.decode(reader, decoderContext);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
         }
         reader.readEndDocument();
@@ -131,6 +226,9 @@ public class ProcessingProtectedRegionCodec implements Codec<ProcessingProtected
         region.setOwners(owners);
         region.setMembers(members);
         RegionDatabaseUtils.trySetFlagMap(region, flags);
+        // Unmarshalling copies most values, so only the values which the region keeps are interned.
+        if (interner != null)
+            interner.internValues(region.getFlags());
 
         return new ProcessingProtectedRegion(region, parent, objectId, world);
     }
@@ -143,24 +241,25 @@ public class ProcessingProtectedRegionCodec implements Codec<ProcessingProtected
         ProtectedRegion region = value.getRegion();
         int priority = region.getPriority();
         Map<Flag<?>, Object> flags = region.getFlags();
-        ProtectedRegion parent = region.getParent();
+        String parent = value.getParent();
 
         writer.writeStartDocument();
         writer.writeString("name", region.getId());
         writer.writeString("world", value.getWorld());
         if (parent != null)
-            writer.writeString("parent", parent.getId());
+            writer.writeString("parent", parent);
         if (priority != 0)
             writer.writeInt32("priority", priority);
         writer.writeString("type", region.getType().name());
-        if (region instanceof ProtectedCuboidRegion) {
-            Codec<BlockVector> blockVectorCodec = registry.get(BlockVector.class);
+        if (schema == SCHEMA_V2) {
+            writer.writeInt32(SCHEMA_FIELD, SCHEMA_V2);
+            writeGeometry(writer, region);
+        } else if (region instanceof ProtectedCuboidRegion) {
             writer.writeName("min");
             blockVectorCodec.encode(writer, region.getMinimumPoint(), encoderContext);
             writer.writeName("max");
             blockVectorCodec.encode(writer, region.getMaximumPoint(), encoderContext);
         } else if (region instanceof ProtectedPolygonalRegion) {
-            Codec<BlockVector2D> blockVector2DCodec = registry.get(BlockVector2D.class);
             writer.writeStartArray("points");
             for (BlockVector2D point : region.getPoints())
                 blockVector2DCodec.encode(writer, point, encoderContext);
@@ -170,9 +269,8 @@ public class ProcessingProtectedRegionCodec implements Codec<ProcessingProtected
         }
         if (!flags.isEmpty()) {
             writer.writeName("flags");
-            registry.get(Document.class).encode(writer, toMapValues(flags), encoderContext);
+            writeFlags(writer, flags, encoderContext);
         }
-        Codec<DefaultDomain> defaultDomainCodec = registry.get(DefaultDomain.class);
         writer.writeName("owners");
         defaultDomainCodec.encode(writer, region.getOwners(), encoderContext);
         writer.writeName("members");
@@ -188,11 +286,84 @@ public class ProcessingProtectedRegionCodec implements Codec<ProcessingProtected
         return ProcessingProtectedRegion.class;
     }
 
-    private static Document toMapValues(Map<Flag<?>, Object> value) {
-        Document document = new Document();
-        for (Map.Entry<Flag<?>, Object> entry : value.entrySet())
-            document.put(entry.getKey().getName(), marshal(entry.getKey(), entry.getValue()));
-        return document;
+    /**
+     * Returns the schema version which is written by this codec.
+     *
+     * @return The schema version
+     */
+    public int getSchema() {
+        return schema;
+    }
+
+    private <T> T intern(T value) {
+        return interner != null ? interner.intern(value) : value;
+    }
+
+    private static void writeGeometry(BsonWriter writer, ProtectedRegion region) {
+        if (region instanceof ProtectedCuboidRegion) {
+            writer.writeName("min");
+            CompactGeometry.writeVector(writer, region.getMinimumPoint());
+            writer.writeName("max");
+            CompactGeometry.writeVector(writer, region.getMaximumPoint());
+        } else if (region instanceof ProtectedPolygonalRegion) {
+            writer.writeBinaryData("points", CompactGeometry.packPoints(region.getPoints()));
+            writer.writeInt32("min_y", region.getMinimumPoint().getBlockY());
+            writer.writeInt32("max_y", region.getMaximumPoint().getBlockY());
+        }
+    }
+
+    private BlockVector readVector(BsonReader reader, DecoderContext decoderContext) {
+        if (reader.getCurrentBsonType() == BsonType.ARRAY)
+            return CompactGeometry.readVector(reader);
+        return blockVectorCodec.decode(reader, decoderContext);
+    }
+
+    private void writeFlags(BsonWriter writer, Map<Flag<?>, Object> flags, EncoderContext encoderContext) {
+        // Sorted, so equal regions result in equal documents regardless of the iteration order of the flag map
+        Flag<?>[] sorted = flags.keySet().toArray(new Flag<?>[flags.size()]);
+        Arrays.sort(sorted, FLAG_ORDER);
+        writer.writeStartDocument();
+        for (Flag<?> flag : sorted) {
+            writer.writeName(flag.getName());
+            writeValue(writer, marshal(flag, flags.get(flag)), encoderContext);
+        }
+        writer.writeEndDocument();
+    }
+
+    /**
+     * Writes a marshalled flag value the same way as {@link org.bson.codecs.DocumentCodec} would, so the encoded
+     * documents stay equal to the ones written by earlier versions.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeValue(BsonWriter writer, Object value, EncoderContext encoderContext) {
+        if (value == null) {
+            writer.writeNull();
+        } else if (value instanceof String) {
+            writer.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            writer.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writer.writeInt32(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            writer.writeInt64((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            writer.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Map) {
+            writer.writeStartDocument();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.writeName(entry.getKey().toString());
+                writeValue(writer, entry.getValue(), encoderContext);
+            }
+            writer.writeEndDocument();
+        } else if (value instanceof Iterable) {
+            writer.writeStartArray();
+            for (Object element : (Iterable<?>) value)
+                writeValue(writer, element, encoderContext);
+            writer.writeEndArray();
+        } else {
+            Codec<Object> codec = (Codec<Object>) registry.get(value.getClass());
+            encoderContext.encodeWithChildContext(codec, writer, value);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -207,4 +378,28 @@ public class ProcessingProtectedRegionCodec implements Codec<ProcessingProtected
             return reader.readString();
         return null;
     }
+
+    private enum Field {
+
+        ID("_id"),
+        NAME("name"),
+        WORLD("world"),
+        PARENT("parent"),
+        PRIORITY("priority"),
+        TYPE("type"),
+        MAX("max"),
+        MAX_Y("max_y"),
+        MIN("min"),
+        MIN_Y("min_y"),
+        FLAGS("flags"),
+        POINTS("points"),
+        OWNERS("owners"),
+        MEMBERS("members");
+
+        private final String name;
+
+        Field(String name) {
+            this.name = name;
+        }
+    }
 }
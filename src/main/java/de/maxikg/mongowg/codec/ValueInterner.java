@@ -0,0 +1,102 @@
+package de.maxikg.mongowg.codec;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import com.google.common.collect.Sets;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canonicalizes equal immutable values which are decoded for many regions, like flag values, group names, player ids
+ * and world names. The pool holds its values weakly, so values which are not referenced by any region anymore are
+ * garbage collected. The statistics are cumulative: every hit is counted, even if the region which kept the pooled
+ * value was unloaded or reloaded since, so they don't describe the memory which is saved right now.
+ */
+public class ValueInterner {
+
+    private static final int STRING_OVERHEAD = 40;
+    private static final int UUID_SIZE = 32;
+    private static final int BOXED_INT_SIZE = 16;
+    private static final int BOXED_LONG_SIZE = 24;
+
+    private final Interner<Object> interner = Interners.newWeakInterner();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    /**
+     * Returns the pooled instance which equals the given value. Values of unsupported types are returned as they are.
+     *
+     * @param value The value or {@code null}
+     * @param <T> The type of the value
+     * @return The pooled value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T intern(T value) {
+        long size = estimateSize(value);
+        if (size == 0)
+            return value;
+        T canonical = (T) interner.intern(value);
+        if (canonical != value) {
+            hits.incrementAndGet();
+            droppedBytes.addAndGet(size);
+        }
+        return canonical;
+    }
+
+    /**
+     * Interns the values of a map in place. The elements of {@link Set} values are interned into a new set. Used on the
+     * unmarshalled flags of a region, so only values which the region keeps are interned.
+     *
+     * @param map The map whose values are interned
+     */
+    public void internValues(Map<?, Object> map) {
+        for (Map.Entry<?, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Set) {
+                Set<Object> interned = Sets.newHashSetWithExpectedSize(((Set<?>) value).size());
+                for (Object element : (Set<?>) value)
+                    interned.add(intern(element));
+                entry.setValue(interned);
+            } else {
+                Object interned = intern(value);
+                if (interned != value)
+                    entry.setValue(interned);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values which were replaced by a pooled value since this {@code ValueInterner} was created.
+     *
+     * @return The cumulative number of hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the estimated size of all values which were replaced by a pooled value since this {@code ValueInterner}
+     * was created.
+     *
+     * @return The cumulative number of bytes
+     */
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    private static long estimateSize(Object value) {
+        if (value instanceof String)
+            return STRING_OVERHEAD + 2L * ((String) value).length();
+        else if (value instanceof UUID)
+            return UUID_SIZE;
+        else if (value instanceof Integer)
+            return BOXED_INT_SIZE;
+        else if (value instanceof Long || value instanceof Double)
+            return BOXED_LONG_SIZE;
+        return 0;
+    }
+}
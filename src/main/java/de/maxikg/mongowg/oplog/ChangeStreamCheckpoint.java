@@ -0,0 +1,49 @@
+package de.maxikg.mongowg.oplog;
+
+import org.bson.BsonDocument;
+import org.bson.ByteBuf;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Remembers the resume token of the last read change stream event, so watching can be resumed after a restart. The
+ * token is stored as BSON document prefixed with its length.
+ */
+public class ChangeStreamCheckpoint extends Checkpoint<BsonDocument> {
+
+    /**
+     * Constructor.
+     *
+     * @param file The file in which the checkpoint is stored
+     */
+    public ChangeStreamCheckpoint(File file) {
+        super(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BsonDocument read(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new RawBsonDocument(bytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void write(DataOutputStream out, BsonDocument token) throws IOException {
+        ByteBuf buffer = new RawBsonDocument(token, new BsonDocumentCodec()).getByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
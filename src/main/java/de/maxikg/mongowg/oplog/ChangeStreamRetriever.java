@@ -0,0 +1,229 @@
+package de.maxikg.mongowg.oplog;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.mongodb.MongoCommandException;
+import com.mongodb.async.AsyncBatchCursor;
+import com.mongodb.async.client.ChangeStreamIterable;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import de.maxikg.mongowg.utils.Backoff;
+import de.maxikg.mongowg.utils.CursorUtils;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link Runnable} which watches a collection with a change stream and submits the changes to an
+ * {@link OpLogHandler}. Alternative to {@link OpLogRetriever}, which requires a replica set but no access to the oplog.
+ * Inserts and replacements are submitted as whole documents, updates with the current document if it still exists.
+ */
+public class ChangeStreamRetriever implements OpLogSource {
+
+    private static final Logger LOGGER = Logger.getLogger(ChangeStreamRetriever.class.getName());
+    private static final List<Bson> PIPELINE = ImmutableList.of(
+            Aggregates.match(Filters.in("operationType", ImmutableList.of("insert", "update", "replace", "delete")))
+    );
+    private static final int CHANGE_STREAM_FATAL_ERROR = 280;
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final long RETRY_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private final MongoCollection<BsonDocument> collection;
+    private final OpLogHandler handler;
+    private final Runnable resync;
+    private final WriteOrigin origin;
+    private final ChangeStreamCheckpoint checkpoint;
+    private final AtomicLong reconnects = new AtomicLong();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final Backoff backoff = new Backoff(RETRY_DELAY, MAX_RETRY_DELAY);
+    private volatile BsonDocument resumeToken;
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    /**
+     * Constructor.
+     *
+     * @param collection The collection which should be watched
+     * @param handler The {@link OpLogHandler} to which the changes should be submitted
+     */
+    public ChangeStreamRetriever(MongoCollection<BsonDocument> collection, OpLogHandler handler) {
+        this(collection, handler, null, null, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param collection The collection which should be watched
+     * @param handler The {@link OpLogHandler} to which the changes should be submitted
+     * @param resync The task which reloads all regions, if the stream cannot be resumed, or {@code null}
+     * @param origin The {@link WriteOrigin} whose inserts and updates are dropped, or {@code null} to submit all
+     * @param checkpoint The {@link ChangeStreamCheckpoint} from which watching is resumed or {@code null}
+     */
+    public ChangeStreamRetriever(MongoCollection<BsonDocument> collection, OpLogHandler handler, Runnable resync, WriteOrigin origin, ChangeStreamCheckpoint checkpoint) {
+        this.collection = Preconditions.checkNotNull(collection, "collection must be not null.");
+        this.handler = Preconditions.checkNotNull(handler, "handler must be not null.");
+        this.resync = resync;
+        this.origin = origin;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        try {
+            watch();
+        } finally {
+            ready.countDown();
+        }
+    }
+
+    private void watch() {
+        thread = Thread.currentThread();
+        resumeToken = checkpoint != null ? checkpoint.load() : null;
+        if (resumeToken != null)
+            LOGGER.info("Resuming change stream from checkpoint.");
+        while (running) {
+            Throwable realError = null;
+            AsyncBatchCursor<ChangeStreamDocument<BsonDocument>> cursor = null;
+            try {
+                ChangeStreamIterable<BsonDocument> stream = collection.watch(PIPELINE, BsonDocument.class).fullDocument(FullDocument.UPDATE_LOOKUP);
+                if (resumeToken != null)
+                    stream = stream.resumeAfter(resumeToken);
+                cursor = CursorUtils.open(stream);
+                // The stream starts when it is opened.
+                ready.countDown();
+                // Batches are processed on this thread, so a blocking handler slows down the stream.
+                List<ChangeStreamDocument<BsonDocument>> batch;
+                while (running && (batch = CursorUtils.next(cursor)) != null) {
+                    for (ChangeStreamDocument<BsonDocument> change : batch) {
+                        emit(change);
+                        resumeToken = change.getResumeToken();
+                        if (checkpoint != null)
+                            checkpoint.update(resumeToken);
+                        backoff.reset();
+                    }
+                }
+            } catch (ExecutionException e) {
+                realError = e.getCause();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                if (cursor != null)
+                    cursor.close();
+            }
+            if (!running)
+                return;
+
+            long count = reconnects.incrementAndGet();
+            if (realError != null && isHistoryLost(realError)) {
+                LOGGER.log(Level.WARNING, "Change stream cannot be resumed. All regions are reloaded.", realError);
+                resumeToken = null;
+                if (resync != null)
+                    resync.run();
+            } else if (realError != null) {
+                LOGGER.log(Level.WARNING, "Change stream was interrupted. Resuming (" + count + " reconnects so far).", realError);
+            }
+            if (!backoff.sleep())
+                return;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        running = false;
+        Thread current = thread;
+        if (current != null)
+            current.interrupt();
+    }
+
+    private void emit(ChangeStreamDocument<BsonDocument> change) {
+        try {
+            BsonDocument fullDocument = change.getFullDocument();
+            switch (change.getOperationType()) {
+                case INSERT:
+                    if (!isOwn(fullDocument))
+                        handler.onCreate(fullDocument);
+                    break;
+                case REPLACE:
+                    if (!isOwn(fullDocument))
+                        handler.onUpdate(getId(change), fullDocument);
+                    break;
+                case UPDATE:
+                    // The looked up document may already contain a later write, so the origin is taken from the update.
+                    if (!isOwn(change.getUpdateDescription().getUpdatedFields()))
+                        handler.onUpdate(getId(change), fullDocument != null ? fullDocument : toUpdate(change.getUpdateDescription()));
+                    break;
+                case DELETE:
+                    handler.onDelete(getId(change));
+                    break;
+                default:
+                    break;
+            }
+        } catch (Throwable e) {
+            handler.onException(e);
+        }
+    }
+
+    private boolean isOwn(BsonDocument document) {
+        return origin != null && origin.isOwn(document);
+    }
+
+    private static ObjectId getId(ChangeStreamDocument<BsonDocument> change) {
+        return change.getDocumentKey().getObjectId("_id").getValue();
+    }
+
+    private static BsonDocument toUpdate(UpdateDescription description) {
+        BsonDocument update = new BsonDocument();
+        if (description.getUpdatedFields() != null && !description.getUpdatedFields().isEmpty())
+            update.put("$set", description.getUpdatedFields());
+        if (description.getRemovedFields() != null && !description.getRemovedFields().isEmpty()) {
+            BsonDocument unset = new BsonDocument();
+            for (String field : description.getRemovedFields())
+                unset.put(field, new BsonInt32(1));
+            update.put("$unset", unset);
+        }
+        return update;
+    }
+
+    private static boolean isHistoryLost(Throwable throwable) {
+        if (!(throwable instanceof MongoCommandException))
+            return false;
+        int code = ((MongoCommandException) throwable).getErrorCode();
+        return code == CHANGE_STREAM_FATAL_ERROR || code == CHANGE_STREAM_HISTORY_LOST;
+    }
+}
@@ -0,0 +1,113 @@
+package de.maxikg.mongowg.oplog;
+
+import com.google.common.base.Preconditions;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the position of the last read change in a local file, so reading can be resumed after a restart. The
+ * position is updated in memory for every change and written to disk by {@link #save()}.
+ *
+ * @param <T> The type of the position
+ */
+public abstract class Checkpoint<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(Checkpoint.class.getName());
+
+    private final AtomicReference<T> current = new AtomicReference<>();
+    private final File file;
+    private T saved;
+
+    /**
+     * Constructor.
+     *
+     * @param file The file in which the checkpoint is stored
+     */
+    protected Checkpoint(File file) {
+        this.file = Preconditions.checkNotNull(file, "file must be not null.");
+    }
+
+    /**
+     * Reads the checkpoint from disk.
+     *
+     * @return The stored position or {@code null} if there is no readable checkpoint
+     */
+    public T load() {
+        if (!file.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            T position = read(in);
+            current.compareAndSet(null, position);
+            return position;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Cannot read checkpoint " + file + ".", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the position of the last read change.
+     *
+     * @return The position or {@code null} if none is known
+     */
+    public T get() {
+        return current.get();
+    }
+
+    /**
+     * Set's the position of the last read change.
+     *
+     * @param position The position
+     */
+    public void update(T position) {
+        current.set(Preconditions.checkNotNull(position, "position must be not null."));
+    }
+
+    /**
+     * Writes the current position to disk, if it has changed since the last call.
+     *
+     * @throws IOException Thrown, if the file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        T position = current.get();
+        if (position == null || position.equals(saved))
+            return;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Cannot create directory " + parent + ".");
+        File temporary = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary))) {
+            write(out, position);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        saved = position;
+    }
+
+    /**
+     * Reads a position which was written by {@link #write(DataOutputStream, Object)}.
+     *
+     * @param in The stream from which the position is read
+     * @return The position
+     * @throws IOException Thrown, if the position cannot be read
+     */
+    protected abstract T read(DataInputStream in) throws IOException;
+
+    /**
+     * Writes a position.
+     *
+     * @param out The stream to which the position is written
+     * @param position The position
+     * @throws IOException Thrown, if the position cannot be written
+     */
+    protected abstract void write(DataOutputStream out, T position) throws IOException;
+}
@@ -0,0 +1,40 @@
+package de.maxikg.mongowg.oplog;
+
+import org.bson.BsonTimestamp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Remembers the timestamp of the last read oplog entry, so tailing can be resumed after a restart.
+ */
+public class OpLogCheckpoint extends Checkpoint<BsonTimestamp> {
+
+    /**
+     * Constructor.
+     *
+     * @param file The file in which the checkpoint is stored
+     */
+    public OpLogCheckpoint(File file) {
+        super(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BsonTimestamp read(DataInputStream in) throws IOException {
+        return new BsonTimestamp(in.readInt(), in.readInt());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void write(DataOutputStream out, BsonTimestamp timestamp) throws IOException {
+        out.writeInt(timestamp.getTime());
+        out.writeInt(timestamp.getInc());
+    }
+}
@@ -19,8 +19,10 @@ public interface OpLogHandler {
      * Called on document update.
      *
      * @param updatedObject The {@link ObjectId} of the updated document
+     * @param update The update as {@link BsonDocument}, which is either the whole replacement document or contains
+     *               update modifiers like {@code $set} and {@code $unset}
      */
-    void onUpdate(ObjectId updatedObject);
+    void onUpdate(ObjectId updatedObject, BsonDocument update);
 
     /**
      * Called on document deletion.
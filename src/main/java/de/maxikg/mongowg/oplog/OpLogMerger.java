@@ -0,0 +1,147 @@
+package de.maxikg.mongowg.oplog;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import de.maxikg.mongowg.utils.OpLogUtils;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the oplog entries of several shards into one {@link OpLogSink} in timestamp order. Every shard submits its
+ * entries to its own lane. An entry is passed on as soon as every lane has reached its timestamp, so no older entry
+ * can follow. Because idle shards don't advance their lane, entries are passed on anyway after the merge delay.
+ */
+public class OpLogMerger implements Runnable {
+
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int result = OpLogUtils.compare(a.timestamp, b.timestamp);
+            return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    private final Object lock = new Object();
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(64, ORDER);
+    private final List<Lane> lanes = Lists.newArrayList();
+    private final OpLogSink sink;
+    private final long delay;
+    private long sequence;
+
+    /**
+     * Constructor.
+     *
+     * @param sink The {@link OpLogSink} to which the merged entries are submitted
+     * @param delay The maximum time in milliseconds an entry waits for the other shards
+     */
+    public OpLogMerger(OpLogSink sink, long delay) {
+        Preconditions.checkArgument(delay > 0, "delay must be greater than 0.");
+        this.sink = Preconditions.checkNotNull(sink, "sink must be not null.");
+        this.delay = TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+
+    /**
+     * Creates a new lane for a shard.
+     *
+     * @return The {@link OpLogSink} to which the shard submits its entries
+     */
+    public OpLogSink createLane() {
+        synchronized (lock) {
+            Lane lane = new Lane();
+            lanes.add(lane);
+            return lane;
+        }
+    }
+
+    /**
+     * Passes on entries until the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        try {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                for (BsonDocument document : poll())
+                    sink.emit(document);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of entries which wait for the other shards.
+     *
+     * @return The number of queued entries
+     */
+    public int size() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private List<BsonDocument> poll() throws InterruptedException {
+        synchronized (lock) {
+            while (true) {
+                List<BsonDocument> documents = Lists.newArrayList();
+                BsonTimestamp watermark = getWatermark();
+                long now = System.nanoTime();
+                Entry head = queue.peek();
+                while (head != null && ((watermark != null && OpLogUtils.compare(head.timestamp, watermark) <= 0) || now - head.received >= delay)) {
+                    documents.add(queue.poll().document);
+                    head = queue.peek();
+                }
+                if (!documents.isEmpty())
+                    return documents;
+                long wait = head != null ? delay - (now - head.received) : delay;
+                TimeUnit.NANOSECONDS.timedWait(lock, Math.max(wait, 1));
+            }
+        }
+    }
+
+    private BsonTimestamp getWatermark() {
+        BsonTimestamp watermark = null;
+        for (Lane lane : lanes) {
+            if (lane.last == null)
+                return null;
+            if (watermark == null || OpLogUtils.compare(lane.last, watermark) < 0)
+                watermark = lane.last;
+        }
+        return watermark;
+    }
+
+    private class Lane implements OpLogSink {
+
+        private BsonTimestamp last;
+
+        @Override
+        public void emit(BsonDocument document) {
+            BsonTimestamp timestamp = document.getTimestamp("ts");
+            synchronized (lock) {
+                last = timestamp;
+                queue.add(new Entry(timestamp, sequence++, System.nanoTime(), document));
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final BsonTimestamp timestamp;
+        private final long sequence;
+        private final long received;
+        private final BsonDocument document;
+
+        public Entry(BsonTimestamp timestamp, long sequence, long received, BsonDocument document) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+            this.received = received;
+            this.document = document;
+        }
+    }
+}
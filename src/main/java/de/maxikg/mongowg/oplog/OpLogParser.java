@@ -1,18 +1,38 @@
 package de.maxikg.mongowg.oplog;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import org.bson.BsonDocument;
+import org.bson.conversions.Bson;
 
 /**
  * Parse oplog events.
  */
-public class OpLogParser {
+public class OpLogParser implements OpLogSink {
 
     private static final String OP_CREATE = "i";
     private static final String OP_UPDATE = "u";
     private static final String OP_DELETE = "d";
 
+    /**
+     * Filter which matches only oplog entries with an operation type understood by {@link #emit(BsonDocument)}.
+     * Entries of chunk migrations between shards are excluded, because they don't change the regions.
+     */
+    public static final Bson OPERATION_FILTER = Filters.and(
+            Filters.in("op", ImmutableList.of(OP_CREATE, OP_UPDATE, OP_DELETE)),
+            Filters.ne("fromMigrate", true)
+    );
+
+    /**
+     * Projection of the oplog entry fields which are read by {@link #emit(BsonDocument)}. {@code o} holds the inserted
+     * document, the update or the deleted id, so it is needed as a whole.
+     */
+    public static final Bson PROJECTION = Projections.fields(Projections.include("op", "ts", "o", "o2._id"), Projections.excludeId());
+
     private final OpLogHandler handler;
+    private final WriteOrigin origin;
 
     /**
      * Constructor.
@@ -20,7 +40,18 @@ public class OpLogParser {
      * @param handler The {@link OpLogHandler} to which the events should be submitted
      */
     public OpLogParser(OpLogHandler handler) {
+        this(handler, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param handler The {@link OpLogHandler} to which the events should be submitted
+     * @param origin The {@link WriteOrigin} whose inserts and updates are dropped, or {@code null} to submit all
+     */
+    public OpLogParser(OpLogHandler handler, WriteOrigin origin) {
         this.handler = Preconditions.checkNotNull(handler, "handler must be not null.");
+        this.origin = origin;
     }
 
     /**
@@ -28,13 +59,16 @@ public class OpLogParser {
      *
      * @param document The oplog entry
      */
+    @Override
     public void emit(BsonDocument document) {
         String action = document.getString("op").getValue();
         try {
+            if (origin != null && !OP_DELETE.equals(action) && origin.isOwn(document.getDocument("o")))
+                return;
             if (OP_CREATE.equals(action))
                 handler.onCreate(document.getDocument("o"));
             else if (OP_UPDATE.equals(action))
-                handler.onUpdate(document.getDocument("o2").getObjectId("_id").getValue());
+                handler.onUpdate(document.getDocument("o2").getObjectId("_id").getValue(), document.getDocument("o"));
             else if (OP_DELETE.equals(action))
                 handler.onDelete(document.getDocument("o").getObjectId("_id").getValue());
         } catch (Throwable e) {
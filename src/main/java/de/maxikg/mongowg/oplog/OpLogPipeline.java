@@ -0,0 +1,260 @@
+package de.maxikg.mongowg.oplog;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.maxikg.mongowg.RegionStorageAdapter;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decouples reading changes from processing them. An {@link OpLogSource} runs on its own tailer thread and submits
+ * its events to this pipeline, which hands them to a pool of workers that call the actual {@link OpLogHandler}. Every
+ * worker has a bounded queue. Events are assigned to workers by the {@link RegionStorageAdapter.RegionPath} of the
+ * region, so the events of one region are processed in order, even if it was deleted and created again with a new
+ * document id. The region of a created document is taken from the document until the worker has processed the
+ * create, afterwards it is resolved like any other. Events of documents whose region is unknown are assigned by
+ * document id. If a queue is full, the tailer blocks until the worker catches up.
+ */
+public class OpLogPipeline implements OpLogHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(OpLogPipeline.class.getName());
+    private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final Runnable STOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final OpLogHandler handler;
+    private final Function<ObjectId, RegionStorageAdapter.RegionPath> pathResolver;
+    private final ConcurrentMap<ObjectId, RegionStorageAdapter.RegionPath> createdPaths = Maps.newConcurrentMap();
+    private final Worker[] workers;
+    private OpLogSource source;
+    private Thread tailer;
+
+    /**
+     * Constructor.
+     *
+     * @param handler The {@link OpLogHandler} which is called by the workers
+     * @param workers The number of workers
+     * @param capacity The maximum number of queued events per worker
+     */
+    public OpLogPipeline(OpLogHandler handler, int workers, int capacity) {
+        this(handler, null, workers, capacity);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param handler The {@link OpLogHandler} which is called by the workers
+     * @param pathResolver Resolves the document id of an update or delete to its region, or {@code null}. Regions
+     *                     created by the handler must be resolvable once its {@code onCreate} returned.
+     * @param workers The number of workers
+     * @param capacity The maximum number of queued events per worker
+     */
+    public OpLogPipeline(OpLogHandler handler, Function<ObjectId, RegionStorageAdapter.RegionPath> pathResolver, int workers, int capacity) {
+        Preconditions.checkArgument(workers > 0, "workers must be greater than 0.");
+        Preconditions.checkArgument(capacity > 0, "capacity must be greater than 0.");
+        this.handler = Preconditions.checkNotNull(handler, "handler must be not null.");
+        this.pathResolver = pathResolver;
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++)
+            this.workers[i] = new Worker(capacity);
+    }
+
+    /**
+     * Starts the workers and runs the given {@link OpLogSource} on the tailer thread.
+     *
+     * @param source The {@link OpLogSource} which submits its events to this pipeline
+     */
+    public synchronized void start(OpLogSource source) {
+        Preconditions.checkState(this.source == null, "Pipeline was already started.");
+        this.source = Preconditions.checkNotNull(source, "source must be not null.");
+        ThreadFactory workerFactory = new ThreadFactoryBuilder()
+                .setNameFormat("MongoWG Oplog Worker #%d")
+                .setDaemon(true)
+                .build();
+        for (Worker worker : workers) {
+            worker.thread = workerFactory.newThread(worker);
+            worker.thread.start();
+        }
+        tailer = new ThreadFactoryBuilder()
+                .setNameFormat("MongoWG Oplog Tailer")
+                .setDaemon(true)
+                .build()
+                .newThread(source);
+        tailer.start();
+    }
+
+    /**
+     * Stops the {@link OpLogSource} and waits until the workers have processed all queued events.
+     */
+    public synchronized void stop() {
+        if (source == null)
+            return;
+        source.stop();
+        join(tailer);
+        for (Worker worker : workers) {
+            boolean queued = false;
+            try {
+                queued = worker.queue.offer(STOP, SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!queued)
+                worker.thread.interrupt();
+        }
+        for (Worker worker : workers)
+            join(worker.thread);
+    }
+
+    /**
+     * Returns the {@link OpLogSource} which runs on the tailer thread.
+     *
+     * @return The {@link OpLogSource} or {@code null} if the pipeline wasn't started
+     */
+    public synchronized OpLogSource getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the number of events which wait for a worker.
+     *
+     * @return The number of queued events
+     */
+    public int getBacklog() {
+        int backlog = 0;
+        for (Worker worker : workers)
+            backlog += worker.queue.size();
+        return backlog;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreate(final BsonDocument createdDocument) {
+        final ObjectId id = createdDocument.getObjectId("_id").getValue();
+        final RegionStorageAdapter.RegionPath path = getPath(createdDocument);
+        if (path != null)
+            createdPaths.put(id, path);
+        submit(path != null ? path : id, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handler.onCreate(createdDocument);
+                } finally {
+                    // The handler has registered the region, so later events are resolved by the path resolver.
+                    if (path != null)
+                        createdPaths.remove(id, path);
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUpdate(final ObjectId updatedObject, final BsonDocument update) {
+        RegionStorageAdapter.RegionPath path = createdPaths.get(updatedObject);
+        submit(path != null ? path : resolve(updatedObject), new Runnable() {
+            @Override
+            public void run() {
+                handler.onUpdate(updatedObject, update);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDelete(final ObjectId deletedObject) {
+        RegionStorageAdapter.RegionPath path = createdPaths.remove(deletedObject);
+        submit(path != null ? path : resolve(deletedObject), new Runnable() {
+            @Override
+            public void run() {
+                handler.onDelete(deletedObject);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onException(Throwable throwable) {
+        handler.onException(throwable);
+    }
+
+    private Object resolve(ObjectId id) {
+        RegionStorageAdapter.RegionPath path = pathResolver != null ? pathResolver.apply(id) : null;
+        return path != null ? path : id;
+    }
+
+    private static RegionStorageAdapter.RegionPath getPath(BsonDocument document) {
+        BsonValue world = document.get("world");
+        BsonValue name = document.get("name");
+        if (world == null || !world.isString() || name == null || !name.isString())
+            return null;
+        return RegionStorageAdapter.RegionPath.create(world.asString().getValue(), name.asString().getValue());
+    }
+
+    private void submit(Object key, Runnable task) {
+        Worker worker = workers[(key.hashCode() & Integer.MAX_VALUE) % workers.length];
+        try {
+            worker.queue.put(task);
+        } catch (InterruptedException e) {
+            // Only happens while the pipeline is stopped
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive())
+            LOGGER.warning("Thread " + thread.getName() + " did not stop within " + SHUTDOWN_TIMEOUT + " ms.");
+    }
+
+    private class Worker implements Runnable {
+
+        private final BlockingQueue<Runnable> queue;
+        private Thread thread;
+
+        public Worker(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                while ((task = queue.take()) != STOP) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, "An error occurred while processing an oplog event.", e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,42 +1,71 @@
 package de.maxikg.mongowg.oplog;
 
 import com.google.common.base.Preconditions;
-import com.mongodb.Block;
 import com.mongodb.CursorType;
-import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.AsyncBatchCursor;
 import com.mongodb.async.client.MongoCollection;
 import com.mongodb.client.model.Filters;
-import de.maxikg.mongowg.utils.ConcurrentUtils;
+import de.maxikg.mongowg.utils.Backoff;
+import de.maxikg.mongowg.utils.CursorUtils;
 import de.maxikg.mongowg.utils.OpLogUtils;
 import org.bson.BsonDocument;
 import org.bson.BsonTimestamp;
 
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * {@link Runnable} which can be used to obtain oplog information.
  */
-public class OpLogRetriever implements Runnable {
+public class OpLogRetriever implements OpLogSource {
 
     private static final Logger LOGGER = Logger.getLogger(OpLogRetriever.class.getName());
+    private static final long RETRY_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+    private static final long IDLE_DELAY = 200;
 
     private final MongoCollection<BsonDocument> oplog;
-    private final OpLogParser parser;
+    private final OpLogSink sink;
     private final String namespace;
+    private final OpLogCheckpoint checkpoint;
+    private final Runnable resync;
+    private final AtomicLong reconnects = new AtomicLong();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final Backoff backoff = new Backoff(RETRY_DELAY, MAX_RETRY_DELAY);
+    private volatile boolean running = true;
+    private volatile Thread thread;
 
     /**
      * Constructor.
      *
      * @param oplog The oplog collection
-     * @param parser An instance of {@link OpLogParser}
+     * @param sink The {@link OpLogSink}, usually an {@link OpLogParser}, to which the entries are submitted
      * @param namespace The namespace for which should be listened
      */
-    public OpLogRetriever(MongoCollection<BsonDocument> oplog, OpLogParser parser, String namespace) {
+    public OpLogRetriever(MongoCollection<BsonDocument> oplog, OpLogSink sink, String namespace) {
+        this(oplog, sink, namespace, null, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param oplog The oplog collection
+     * @param sink The {@link OpLogSink}, usually an {@link OpLogParser}, to which the entries are submitted
+     * @param namespace The namespace for which should be listened
+     * @param checkpoint The {@link OpLogCheckpoint} from which tailing is resumed or {@code null}
+     * @param resync The task which reloads all regions, if the checkpoint is older than the oplog, or {@code null}
+     */
+    public OpLogRetriever(MongoCollection<BsonDocument> oplog, OpLogSink sink, String namespace, OpLogCheckpoint checkpoint, Runnable resync) {
         this.oplog = Preconditions.checkNotNull(oplog, "oplog must be not null.");
-        this.parser = Preconditions.checkNotNull(parser, "parser must be not null.");
+        this.sink = Preconditions.checkNotNull(sink, "sink must be not null.");
         this.namespace = Preconditions.checkNotNull(namespace, "namespace must be not null.");
+        this.checkpoint = checkpoint;
+        this.resync = resync;
     }
 
     /**
@@ -44,34 +73,145 @@ public class OpLogRetriever implements Runnable {
      */
     @Override
     public void run() {
-        BsonTimestamp timestamp = OpLogUtils.getLatestOplogTimestamp(oplog);
-        if (timestamp == null) {
-            LOGGER.severe("OpLog is not ready. Please make sure that the server maintains an oplog and restart this server.");
-            return;
+        try {
+            tail();
+        } finally {
+            ready.countDown();
         }
-        final AtomicReference<BsonTimestamp> last = new AtomicReference<>(timestamp);
-        //noinspection InfiniteLoopStatement
-        while (true) {
-            final CountDownLatch waiter = new CountDownLatch(1);
-            oplog.find(Filters.and(Filters.gt("ts", last.get()), Filters.eq("ns", namespace))).cursorType(CursorType.TailableAwait).forEach(
-                    new Block<BsonDocument>() {
-                        @Override
-                        public void apply(BsonDocument document) {
-                            BsonTimestamp current = document.getTimestamp("ts");
-                            if (current.getTime() > last.get().getTime()) {
-                                last.set(current);
-                                parser.emit(document);
-                            }
-                        }
-                    },
-                    new SingleResultCallback<Void>() {
-                        @Override
-                        public void onResult(Void aVoid, Throwable throwable) {
-                            waiter.countDown();
+    }
+
+    private void tail() {
+        thread = Thread.currentThread();
+        BsonTimestamp saved = checkpoint != null ? checkpoint.load() : null;
+        BsonTimestamp timestamp = saved != null && isInOplogWindow(saved) ? saved : null;
+        if (timestamp != null) {
+            LOGGER.info("Resuming oplog from checkpoint " + timestamp.getTime() + ":" + timestamp.getInc() + ".");
+        } else {
+            timestamp = OpLogUtils.getLatestOplogTimestamp(oplog);
+            if (timestamp == null) {
+                LOGGER.severe("OpLog is not ready. Please make sure that the server maintains an oplog and restart this server.");
+                return;
+            }
+            // The resync starts after the latest timestamp was read, so no change gets lost in between.
+            if (saved != null) {
+                LOGGER.warning("Oplog checkpoint is older than the oplog. All regions are reloaded.");
+                if (resync != null)
+                    resync.run();
+            }
+        }
+        BsonTimestamp last = timestamp;
+        boolean checkWindow = false;
+        ready.countDown();
+        while (running) {
+            // The lookups fail as well while the server is unreachable, so they are retried before the cursor is
+            // reopened. Otherwise a truncation in between would go unnoticed.
+            if (checkWindow) {
+                try {
+                    last = checkOplogWindow(last);
+                    checkWindow = false;
+                } catch (RuntimeException e) {
+                    long count = reconnects.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Cannot read oplog window. Retrying (" + count + " reconnects so far).", e);
+                    if (!backoff.sleep())
+                        return;
+                    continue;
+                }
+            }
+            Throwable error = null;
+            boolean received = false;
+            AsyncBatchCursor<BsonDocument> cursor = null;
+            try {
+                cursor = CursorUtils.open(oplog.find(Filters.and(Filters.gt("ts", last), Filters.eq("ns", namespace), OpLogParser.OPERATION_FILTER))
+                        .projection(OpLogParser.PROJECTION)
+                        .cursorType(CursorType.TailableAwait)
+                        .oplogReplay(true));
+                // Batches are processed on this thread, so a blocking sink slows down tailing.
+                List<BsonDocument> batch;
+                while (running && (batch = CursorUtils.next(cursor)) != null) {
+                    for (BsonDocument document : batch) {
+                        received = true;
+                        BsonTimestamp current = document.getTimestamp("ts");
+                        if (OpLogUtils.compare(current, last) > 0) {
+                            last = current;
+                            sink.emit(document);
+                            if (checkpoint != null)
+                                checkpoint.update(current);
                         }
                     }
-            );
-            ConcurrentUtils.safeAwait(waiter);
+                }
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                if (cursor != null)
+                    cursor.close();
+            }
+            if (!running)
+                return;
+
+            // A cursor which delivered entries ended regularly. A tailable cursor without any match dies immediately,
+            // which is normal on a quiet namespace, so it is reopened after a short fixed delay.
+            if (error == null) {
+                backoff.reset();
+                if (received)
+                    continue;
+                try {
+                    Thread.sleep(IDLE_DELAY);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            long count = reconnects.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Oplog cursor failed. Reconnecting (" + count + " reconnects so far).", error);
+            if (!backoff.sleep())
+                return;
+            checkWindow = true;
         }
     }
+
+    private BsonTimestamp checkOplogWindow(BsonTimestamp last) {
+        if (isInOplogWindow(last))
+            return last;
+        BsonTimestamp latest = OpLogUtils.getLatestOplogTimestamp(oplog);
+        if (latest == null)
+            return last;
+        LOGGER.warning("Oplog was truncated while the cursor was down. All regions are reloaded.");
+        if (resync != null)
+            resync.run();
+        return latest;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        running = false;
+        Thread current = thread;
+        if (current != null)
+            current.interrupt();
+    }
+
+    private boolean isInOplogWindow(BsonTimestamp timestamp) {
+        BsonTimestamp oldest = OpLogUtils.getOldestOplogTimestamp(oplog);
+        return oldest != null && OpLogUtils.compare(oldest, timestamp) <= 0;
+    }
 }
@@ -0,0 +1,16 @@
+package de.maxikg.mongowg.oplog;
+
+import org.bson.BsonDocument;
+
+/**
+ * Receives raw oplog entries from an {@link OpLogRetriever}.
+ */
+public interface OpLogSink {
+
+    /**
+     * Submits an oplog entry.
+     *
+     * @param document The oplog entry
+     */
+    void emit(BsonDocument document);
+}
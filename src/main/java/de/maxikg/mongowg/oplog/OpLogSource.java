@@ -0,0 +1,34 @@
+package de.maxikg.mongowg.oplog;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Runnable} which reads database changes and submits them to an {@link OpLogHandler} until it fails
+ * permanently or is stopped.
+ */
+public interface OpLogSource extends Runnable {
+
+    /**
+     * Returns how often the source had to reconnect after its cursor failed or ended.
+     *
+     * @return The number of reconnects
+     */
+    long getReconnectCount();
+
+    /**
+     * Waits until the position from which changes are read is fixed. Changes which are committed afterwards are read
+     * by this source, so a snapshot of the regions which is read afterwards doesn't miss any change.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of {@code timeout}
+     * @return {@code true} if the position is fixed or the source has ended, {@code false} if the time elapsed
+     * @throws InterruptedException Thrown if the current thread was interrupted while waiting
+     */
+    boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Stops reading changes. {@link #run()} returns as soon as possible. Entries which are already read may still be
+     * submitted.
+     */
+    void stop();
+}
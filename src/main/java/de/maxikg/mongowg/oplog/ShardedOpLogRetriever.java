@@ -0,0 +1,88 @@
+package de.maxikg.mongowg.oplog;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OpLogSource} for sharded clusters. Every shard's oplog is tailed by its own {@link OpLogRetriever} on its own
+ * thread, and the entries are merged in timestamp order by an {@link OpLogMerger}, which runs on the calling thread.
+ */
+public class ShardedOpLogRetriever implements OpLogSource {
+
+    private final OpLogMerger merger;
+    private final Map<String, OpLogRetriever> shards;
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    /**
+     * Constructor.
+     *
+     * @param merger The {@link OpLogMerger} to which the retrievers submit their entries
+     * @param shards A {@link Map} from shard id to the {@link OpLogRetriever} of the shard
+     */
+    public ShardedOpLogRetriever(OpLogMerger merger, Map<String, OpLogRetriever> shards) {
+        this.merger = Preconditions.checkNotNull(merger, "merger must be not null.");
+        this.shards = ImmutableMap.copyOf(Preconditions.checkNotNull(shards, "shards must be not null."));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        if (!running)
+            return;
+        for (Map.Entry<String, OpLogRetriever> entry : shards.entrySet()) {
+            ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("MongoWG Oplog " + entry.getKey())
+                    .setDaemon(true)
+                    .build();
+            threadFactory.newThread(entry.getValue()).start();
+        }
+        merger.run();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getReconnectCount() {
+        long count = 0;
+        for (OpLogRetriever retriever : shards.values())
+            count += retriever.getReconnectCount();
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (OpLogRetriever retriever : shards.values()) {
+            if (!retriever.awaitReady(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        running = false;
+        for (OpLogRetriever retriever : shards.values())
+            retriever.stop();
+        // The merger runs on the thread of this retriever and stops when it is interrupted.
+        Thread current = thread;
+        if (current != null)
+            current.interrupt();
+    }
+}
@@ -0,0 +1,91 @@
+package de.maxikg.mongowg.oplog;
+
+import com.google.common.base.Preconditions;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifies the documents written by this server. Every write stamps the document with the id of this node and a
+ * monotonic version, so changes of this server can be recognized in the oplog without reading the document again.
+ */
+public class WriteOrigin {
+
+    /**
+     * Name of the field which holds the id of the writing node.
+     */
+    public static final String ORIGIN_FIELD = "_origin";
+
+    /**
+     * Name of the field which holds the write version of the writing node.
+     */
+    public static final String VERSION_FIELD = "_version";
+
+    private final AtomicLong version = new AtomicLong();
+    private final BsonObjectId nodeId;
+
+    /**
+     * Constructor. Creates a new random node id.
+     */
+    public WriteOrigin() {
+        this(new ObjectId());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param nodeId The id of this node
+     */
+    public WriteOrigin(ObjectId nodeId) {
+        this.nodeId = new BsonObjectId(Preconditions.checkNotNull(nodeId, "nodeId must be not null."));
+    }
+
+    /**
+     * Returns the id of this node.
+     *
+     * @return The node id
+     */
+    public ObjectId getNodeId() {
+        return nodeId.getValue();
+    }
+
+    /**
+     * Adds the origin fields with the next version to the {@code $set} part of an update. The {@code $set} document is
+     * copied, so documents which are referenced by the update elsewhere are not modified.
+     *
+     * @param update The update
+     * @return The given update
+     */
+    public BsonDocument stamp(BsonDocument update) {
+        BsonDocument set = new BsonDocument();
+        BsonDocument previous = update.getDocument("$set", null);
+        if (previous != null)
+            set.putAll(previous);
+        update.put("$set", set);
+        set.put(ORIGIN_FIELD, nodeId);
+        set.put(VERSION_FIELD, new BsonInt64(version.incrementAndGet()));
+        return update;
+    }
+
+    /**
+     * Checks if an inserted document, a replacement or an update was written by this node.
+     *
+     * @param document The inserted document, the replacement or the update modifiers
+     * @return {@code true} if the origin fields name this node, otherwise {@code false}
+     */
+    public boolean isOwn(BsonDocument document) {
+        if (document == null)
+            return false;
+        BsonValue origin = document.get(ORIGIN_FIELD);
+        if (origin == null) {
+            BsonValue set = document.get("$set");
+            if (set != null && set.isDocument())
+                origin = set.asDocument().get(ORIGIN_FIELD);
+        }
+        return nodeId.equals(origin);
+    }
+}
@@ -0,0 +1,131 @@
+package de.maxikg.mongowg.snapshot;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * A local copy of all region documents of a world, together with the oplog timestamp up to which all changes are
+ * contained.
+ *
+ * <p>File format: the magic number {@code MWGS}, the format version, the oplog timestamp (time and increment), the
+ * number of documents and the documents as they are stored by MongoDB. BSON documents are prefixed with their own
+ * length, so no further framing is needed. Like BSON, all numbers are little endian.</p>
+ */
+public class RegionSnapshot {
+
+    private static final int MAGIC = 0x5347574D;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private final BsonTimestamp timestamp;
+    private final List<RawBsonDocument> documents;
+
+    /**
+     * Constructor.
+     *
+     * @param timestamp The oplog timestamp up to which all changes are contained
+     * @param documents The region documents
+     */
+    public RegionSnapshot(BsonTimestamp timestamp, List<RawBsonDocument> documents) {
+        this.timestamp = Preconditions.checkNotNull(timestamp, "timestamp must be not null.");
+        this.documents = ImmutableList.copyOf(Preconditions.checkNotNull(documents, "documents must be not null."));
+    }
+
+    /**
+     * Returns the oplog timestamp up to which all changes are contained.
+     *
+     * @return The timestamp
+     */
+    public BsonTimestamp getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the region documents.
+     *
+     * @return A immutable {@link List} of the documents
+     */
+    public List<RawBsonDocument> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Writes this snapshot to the given file. The file is written next to the target and moved afterwards, so a
+     * crash never leaves a partial snapshot.
+     *
+     * @param file The target file
+     * @throws IOException Thrown, if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        File temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(timestamp.getTime()).putInt(timestamp.getInc()).putInt(documents.size());
+            out.write(header.array());
+            for (RawBsonDocument document : documents) {
+                ByteBuffer buffer = document.getByteBuffer().asNIO();
+                if (buffer.hasArray()) {
+                    out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                } else {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    out.write(bytes);
+                }
+            }
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot from the given file. The file is memory mapped, so it is not copied into a heap buffer before
+     * the documents are extracted.
+     *
+     * @param file The file
+     * @return The {@code RegionSnapshot}
+     * @throws IOException Thrown, if the file cannot be read or is not a valid snapshot
+     */
+    public static RegionSnapshot read(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.remaining() < HEADER_SIZE || mapped.getInt() != MAGIC)
+                throw new IOException(file + " is not a region snapshot.");
+            int version = mapped.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported snapshot version " + version + " of " + file + ".");
+            BsonTimestamp timestamp = new BsonTimestamp(mapped.getInt(), mapped.getInt());
+            int count = mapped.getInt();
+            if (count < 0)
+                throw new IOException(file + " is corrupted.");
+
+            ImmutableList.Builder<RawBsonDocument> documents = ImmutableList.builder();
+            for (int i = 0; i < count; i++) {
+                if (mapped.remaining() < 4)
+                    throw new IOException(file + " is truncated.");
+                int length = mapped.getInt(mapped.position());
+                if (length < 5 || length > mapped.remaining())
+                    throw new IOException(file + " is truncated.");
+                byte[] bytes = new byte[length];
+                mapped.get(bytes);
+                documents.add(new RawBsonDocument(bytes));
+            }
+            return new RegionSnapshot(timestamp, documents.build());
+        }
+    }
+}
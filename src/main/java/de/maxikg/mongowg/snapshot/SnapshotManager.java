@@ -0,0 +1,278 @@
+package de.maxikg.mongowg.snapshot;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.mongodb.Block;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.sk89q.worldguard.protection.managers.storage.StorageException;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import de.maxikg.mongowg.RegionStorageAdapter;
+import de.maxikg.mongowg.oplog.OpLogHandler;
+import de.maxikg.mongowg.oplog.OpLogParser;
+import de.maxikg.mongowg.utils.ConcurrentUtils;
+import de.maxikg.mongowg.utils.FutureResultCallback;
+import de.maxikg.mongowg.utils.OpLogUtils;
+import de.maxikg.mongowg.utils.UpdateUtils;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes local {@link RegionSnapshot}s of the loaded worlds and uses them for warm starts. On load the snapshot is
+ * brought up to date by replaying all oplog entries which are newer than the snapshot. If the oplog doesn't reach
+ * back to the snapshot, the world has to be loaded from database.
+ */
+public class SnapshotManager {
+
+    private static final Logger LOGGER = Logger.getLogger(SnapshotManager.class.getName());
+    private static final String FILE_EXTENSION = ".snapshot";
+
+    private final Set<String> worlds = Sets.newConcurrentHashSet();
+    private final File directory;
+    private final RegionStorageAdapter storageAdapter;
+    private final MongoCollection<BsonDocument> oplog;
+    private final String namespace;
+
+    /**
+     * Constructor.
+     *
+     * @param directory The directory in which the snapshots are stored
+     * @param storageAdapter The {@link RegionStorageAdapter} which decodes the regions
+     * @param oplog The oplog collection
+     * @param namespace The namespace of the regions collection
+     */
+    public SnapshotManager(File directory, RegionStorageAdapter storageAdapter, MongoCollection<BsonDocument> oplog, String namespace) {
+        this.directory = Preconditions.checkNotNull(directory, "directory must be not null.");
+        this.storageAdapter = Preconditions.checkNotNull(storageAdapter, "storageAdapter must be not null.");
+        this.oplog = Preconditions.checkNotNull(oplog, "oplog must be not null.");
+        this.namespace = Preconditions.checkNotNull(namespace, "namespace must be not null.");
+    }
+
+    /**
+     * Remembers a world, so further calls of {@link #writeAll()} will write a snapshot of it.
+     *
+     * @param world The name of the world
+     */
+    public void register(String world) {
+        worlds.add(Preconditions.checkNotNull(world, "world must be not null."));
+    }
+
+    /**
+     * Loads the regions of a world from its snapshot and the oplog. The world is registered as well.
+     *
+     * @param world The name of the world
+     * @return The regions of the world or {@code null} if there is no usable snapshot
+     * @see #register(String)
+     */
+    public Set<ProtectedRegion> load(String world) {
+        register(world);
+        File file = getFile(world);
+        if (!file.isFile())
+            return null;
+
+        try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            RegionSnapshot snapshot = RegionSnapshot.read(file);
+            if (!isInOplogWindow(snapshot.getTimestamp())) {
+                LOGGER.info("Snapshot of world " + world + " is older than the oplog. It is loaded from database.");
+                return null;
+            }
+
+            Map<ObjectId, BsonDocument> documents = Maps.newLinkedHashMap();
+            for (RawBsonDocument document : snapshot.getDocuments())
+                documents.put(document.getObjectId("_id").getValue(), document);
+            int replayed = replay(world, snapshot.getTimestamp(), documents);
+            // The oplog is capped. Entries which were removed while replaying are lost, so the window is checked again.
+            if (!isInOplogWindow(snapshot.getTimestamp())) {
+                LOGGER.info("Oplog was truncated while replaying the snapshot of world " + world + ". It is loaded from database.");
+                return null;
+            }
+
+            Set<ProtectedRegion> regions = storageAdapter.loadAll(world, documents.values());
+            LOGGER.info("Loaded " + regions.size() + " regions of world " + world + " from snapshot and " + replayed
+                    + " oplog entries in " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms.");
+            return regions;
+        } catch (IOException | StorageException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Cannot load snapshot of world " + world + ". It is loaded from database.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of a world. The oplog timestamp is read before the regions, so the snapshot contains at least
+     * all changes up to that timestamp.
+     *
+     * @param world The name of the world
+     * @throws StorageException Thrown, if the regions cannot be read or the snapshot cannot be written
+     */
+    public void write(String world) throws StorageException {
+        BsonTimestamp timestamp = OpLogUtils.getLatestOplogTimestamp(oplog);
+        if (timestamp == null)
+            throw new StorageException("Oplog is not available.");
+
+        List<RawBsonDocument> documents = Collections.synchronizedList(Lists.<RawBsonDocument>newArrayList());
+        FutureResultCallback<List<RawBsonDocument>> callback = FutureResultCallback.create();
+        storageAdapter.getRawCollection().find(Filters.eq("world", world)).batchSize(storageAdapter.getLoadBatchSize()).into(documents, callback);
+        await(callback.getFuture(), "Cannot read regions of world " + world + ".");
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new StorageException("Cannot create directory " + directory + ".");
+        try {
+            new RegionSnapshot(timestamp, documents).write(getFile(world));
+        } catch (IOException e) {
+            throw new StorageException("Cannot write snapshot of world " + world + ".", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of every world which was registered at this {@code SnapshotManager}. Errors are logged.
+     */
+    public void writeAll() {
+        for (String world : worlds) {
+            try {
+                write(world);
+            } catch (StorageException e) {
+                LOGGER.log(Level.WARNING, "Cannot write snapshot of world " + world + ".", e);
+            }
+        }
+    }
+
+    private boolean isInOplogWindow(BsonTimestamp timestamp) {
+        BsonTimestamp oldest = OpLogUtils.getOldestOplogTimestamp(oplog);
+        return oldest != null && OpLogUtils.compare(oldest, timestamp) <= 0;
+    }
+
+    private int replay(String world, BsonTimestamp timestamp, final Map<ObjectId, BsonDocument> documents) throws StorageException {
+        final ReplayHandler handler = new ReplayHandler(world, documents);
+        final OpLogParser parser = new OpLogParser(handler);
+        final int[] count = new int[1];
+        FutureResultCallback<Void> callback = FutureResultCallback.create();
+        oplog.find(Filters.and(Filters.gt("ts", timestamp), Filters.eq("ns", namespace), OpLogParser.OPERATION_FILTER))
+                .projection(OpLogParser.PROJECTION)
+                .sort(new Document("$natural", 1))
+                .forEach(
+                        new Block<BsonDocument>() {
+                            @Override
+                            public void apply(BsonDocument document) {
+                                count[0]++;
+                                parser.emit(document);
+                            }
+                        },
+                        callback
+                );
+        await(callback.getFuture(), "Cannot read oplog.");
+        if (handler.error != null)
+            throw new StorageException("Cannot replay oplog.", handler.error);
+
+        // Documents with unsupported updates are read again in one query.
+        if (!handler.updated.isEmpty()) {
+            final Map<ObjectId, BsonDocument> reloaded = Maps.newConcurrentMap();
+            FutureResultCallback<Void> reloadCallback = FutureResultCallback.create();
+            storageAdapter.getRawCollection().find(Filters.in("_id", handler.updated)).forEach(
+                    new Block<RawBsonDocument>() {
+                        @Override
+                        public void apply(RawBsonDocument document) {
+                            reloaded.put(document.getObjectId("_id").getValue(), document);
+                        }
+                    },
+                    reloadCallback
+            );
+            await(reloadCallback.getFuture(), "Cannot read updated regions.");
+            for (ObjectId id : handler.updated) {
+                BsonDocument document = reloaded.get(id);
+                if (document != null && world.equals(document.getString("world").getValue()))
+                    documents.put(id, document);
+                else
+                    documents.remove(id);
+            }
+        }
+        return count[0];
+    }
+
+    private File getFile(String world) {
+        return new File(directory, world + FILE_EXTENSION);
+    }
+
+    private static <T> T await(ListenableFuture<T> future, String message) throws StorageException {
+        try {
+            return ConcurrentUtils.safeGet(future);
+        } catch (ExecutionException e) {
+            throw new StorageException(message, e.getCause());
+        }
+    }
+
+    /**
+     * Applies oplog entries to the documents of a snapshot. Updates which can't be applied locally are collected, so
+     * the affected documents can be read again.
+     */
+    private static class ReplayHandler implements OpLogHandler {
+
+        private final Set<ObjectId> updated = Sets.newLinkedHashSet();
+        private final String world;
+        private final Map<ObjectId, BsonDocument> documents;
+        private Throwable error;
+
+        public ReplayHandler(String world, Map<ObjectId, BsonDocument> documents) {
+            this.world = world;
+            this.documents = documents;
+        }
+
+        @Override
+        public void onCreate(BsonDocument createdDocument) {
+            if (world.equals(createdDocument.getString("world").getValue()))
+                documents.put(createdDocument.getObjectId("_id").getValue(), createdDocument);
+        }
+
+        @Override
+        public void onUpdate(ObjectId updatedObject, BsonDocument update) {
+            BsonDocument document = documents.get(updatedObject);
+            if (document == null)
+                return;
+            if (!updated.contains(updatedObject)) {
+                try {
+                    if (UpdateUtils.isUpdate(update))
+                        documents.put(updatedObject, UpdateUtils.apply(document, update));
+                    else if (update.containsKey("_id"))
+                        documents.put(updatedObject, update);
+                    else
+                        documents.put(updatedObject, update.clone().append("_id", new BsonObjectId(updatedObject)));
+                    return;
+                } catch (IllegalArgumentException ignore) {
+                    // Unsupported update, so the document is read again
+                }
+            }
+            updated.add(updatedObject);
+        }
+
+        @Override
+        public void onDelete(ObjectId deletedObject) {
+            documents.remove(deletedObject);
+            updated.remove(deletedObject);
+        }
+
+        @Override
+        public void onException(Throwable throwable) {
+            if (error == null)
+                error = throwable;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package de.maxikg.mongowg.utils;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter. Every delay is doubled up to a maximum, and randomized between half of it and the
+ * full value, so many clients don't retry at the same time.
+ */
+public class Backoff {
+
+    private final Random random = new Random();
+    private final long initialDelay;
+    private final long maxDelay;
+    private long current;
+
+    /**
+     * Constructor.
+     *
+     * @param initialDelay The first delay in milliseconds
+     * @param maxDelay The maximum delay in milliseconds
+     */
+    public Backoff(long initialDelay, long maxDelay) {
+        Preconditions.checkArgument(initialDelay > 0, "initialDelay must be greater than 0.");
+        Preconditions.checkArgument(maxDelay >= initialDelay, "maxDelay must be greater than or equal to initialDelay.");
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.current = initialDelay;
+    }
+
+    /**
+     * Returns the next delay and increases the following one.
+     *
+     * @return The delay in milliseconds
+     */
+    public synchronized long nextDelay() {
+        long delay = current;
+        current = Math.min(current * 2, maxDelay);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half + 1));
+    }
+
+    /**
+     * Resets the delay to its initial value. Should be called after a successful attempt.
+     */
+    public synchronized void reset() {
+        current = initialDelay;
+    }
+
+    /**
+     * Sleeps for the next delay.
+     *
+     * @return {@code false} if the thread was interrupted, otherwise {@code true}
+     */
+    public boolean sleep() {
+        try {
+            Thread.sleep(nextDelay());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -1,6 +1,16 @@
 package de.maxikg.mongowg.utils;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Utilities to deal with concurrent recurring things.
@@ -21,4 +31,57 @@ public class ConcurrentUtils {
         } catch (InterruptedException ignore) {
         }
     }
+
+    /**
+     * Waits uninterruptibly for the result of the given {@link Future}.
+     *
+     * @param future The {@link Future}
+     * @param <T> The result type
+     * @return The result
+     * @throws ExecutionException Thrown if the computation threw an exception
+     */
+    public static <T> T safeGet(Future<T> future) throws ExecutionException {
+        return Uninterruptibles.getUninterruptibly(future);
+    }
+
+    /**
+     * Creates a {@link ListenableFuture} which completes after all given futures are completed. Unlike
+     * {@link com.google.common.util.concurrent.Futures#allAsList(Iterable)} it doesn't fail before every future is
+     * completed. If one or more futures failed, it fails with the last exception.
+     *
+     * @param futures The futures
+     * @return The combined {@link ListenableFuture}
+     */
+    public static ListenableFuture<Void> allCompleted(Collection<? extends ListenableFuture<?>> futures) {
+        final SettableFuture<Void> result = SettableFuture.create();
+        if (futures.isEmpty()) {
+            result.set(null);
+            return result;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        final AtomicReference<Throwable> lastError = new AtomicReference<>();
+        for (final ListenableFuture<?> future : futures) {
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Uninterruptibles.getUninterruptibly(future);
+                    } catch (ExecutionException e) {
+                        lastError.set(e.getCause());
+                    } catch (Throwable e) {
+                        lastError.set(e);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        Throwable realLastError = lastError.get();
+                        if (realLastError != null)
+                            result.setException(realLastError);
+                        else
+                            result.set(null);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,49 @@
+package de.maxikg.mongowg.utils;
+
+import com.mongodb.async.AsyncBatchCursor;
+import com.mongodb.async.client.MongoIterable;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Utilities to iterate cursors batch by batch on the calling thread. Unlike
+ * {@link MongoIterable#forEach(com.mongodb.Block, com.mongodb.async.SingleResultCallback)} the next batch is only
+ * requested after the previous one was processed, so a slow consumer slows down the cursor instead of the driver's
+ * threads.
+ */
+public class CursorUtils {
+
+    private CursorUtils() {
+    }
+
+    /**
+     * Opens a cursor and waits for it.
+     *
+     * @param iterable The {@link MongoIterable} which should be iterated
+     * @param <T> The document type
+     * @return The {@link AsyncBatchCursor}
+     * @throws ExecutionException Thrown if the cursor cannot be opened
+     * @throws InterruptedException Thrown if the current thread was interrupted while waiting
+     */
+    public static <T> AsyncBatchCursor<T> open(MongoIterable<T> iterable) throws ExecutionException, InterruptedException {
+        FutureResultCallback<AsyncBatchCursor<T>> callback = FutureResultCallback.create();
+        iterable.batchCursor(callback);
+        return callback.getFuture().get();
+    }
+
+    /**
+     * Requests the next batch of a cursor and waits for it.
+     *
+     * @param cursor The {@link AsyncBatchCursor}
+     * @param <T> The document type
+     * @return The next batch or {@code null} if the cursor is exhausted
+     * @throws ExecutionException Thrown if the batch cannot be read
+     * @throws InterruptedException Thrown if the current thread was interrupted while waiting
+     */
+    public static <T> List<T> next(AsyncBatchCursor<T> cursor) throws ExecutionException, InterruptedException {
+        FutureResultCallback<List<T>> callback = FutureResultCallback.create();
+        cursor.next(callback);
+        return callback.getFuture().get();
+    }
+}
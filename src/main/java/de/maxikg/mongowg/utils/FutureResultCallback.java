@@ -0,0 +1,82 @@
+package de.maxikg.mongowg.utils;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.mongodb.async.SingleResultCallback;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link SingleResultCallback} which completes a {@link ListenableFuture}. An optional chained callback is executed
+ * before the future completes, so its side effects are visible to everyone who waits on the future.
+ */
+public class FutureResultCallback<T> implements SingleResultCallback<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(FutureResultCallback.class.getName());
+
+    private final SettableFuture<T> future = SettableFuture.create();
+    private final SingleResultCallback<T> chained;
+
+    /**
+     * Constructor.
+     */
+    public FutureResultCallback() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param chained The {@link SingleResultCallback} which is called before completion or {@code null}
+     */
+    public FutureResultCallback(SingleResultCallback<T> chained) {
+        this.chained = chained;
+    }
+
+    /**
+     * Returns the {@link ListenableFuture} which is completed by this callback.
+     *
+     * @return The {@link ListenableFuture}
+     */
+    public ListenableFuture<T> getFuture() {
+        return future;
+    }
+
+    @Override
+    public void onResult(T result, Throwable throwable) {
+        if (chained != null) {
+            try {
+                chained.onResult(result, throwable);
+            } catch (Throwable e) {
+                LOGGER.log(Level.SEVERE, "An error occurred while executing chained SingleResultCallback.", e);
+            }
+        }
+
+        if (throwable != null)
+            future.setException(throwable);
+        else
+            future.set(result);
+    }
+
+    /**
+     * Static factory method for {@code FutureResultCallback}.
+     *
+     * @param <T> The result type
+     * @return The constructed {@code FutureResultCallback}
+     */
+    public static <T> FutureResultCallback<T> create() {
+        return new FutureResultCallback<>();
+    }
+
+    /**
+     * Static factory method for {@code FutureResultCallback}.
+     *
+     * @param chained The {@link SingleResultCallback} which is called before completion or {@code null}
+     * @param <T> The result type
+     * @return The constructed {@code FutureResultCallback}
+     */
+    public static <T> FutureResultCallback<T> create(SingleResultCallback<T> chained) {
+        return new FutureResultCallback<>(chained);
+    }
+}
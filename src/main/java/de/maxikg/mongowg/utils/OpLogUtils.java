@@ -1,6 +1,10 @@
 package de.maxikg.mongowg.utils;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.mongodb.Block;
 import com.mongodb.async.SingleResultCallback;
 import com.mongodb.async.client.MongoClient;
 import com.mongodb.async.client.MongoCollection;
@@ -8,6 +12,8 @@ import org.bson.BsonDocument;
 import org.bson.BsonTimestamp;
 import org.bson.Document;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -17,7 +23,13 @@ import java.util.concurrent.atomic.AtomicReference;
 public class OpLogUtils {
 
     public static final String OPLOG_COLLECTION = "oplog.$main";
+    public static final String REPLICA_SET_OPLOG_COLLECTION = "oplog.rs";
     public static final String OPLOG_DATABASE = "local";
+    public static final String CONFIG_DATABASE = "config";
+    public static final String SHARDS_COLLECTION = "shards";
+
+    private static final String SCHEME = "mongodb://";
+    private static final String SRV_SCHEME = "mongodb+srv://";
 
     private OpLogUtils() {
     }
@@ -29,10 +41,43 @@ public class OpLogUtils {
      * @return The latest timestamp or {@code null} if no entry is available
      */
     public static BsonTimestamp getLatestOplogTimestamp(MongoCollection<BsonDocument> collection) {
+        return getOplogTimestamp(collection, -1);
+    }
+
+    /**
+     * Returns the timestamp of the oldest oplog entry. Changes which are older than this timestamp can't be read
+     * from the oplog anymore.
+     *
+     * @param collection The oplog {@link MongoCollection}
+     * @return The oldest timestamp or {@code null} if no entry is available
+     */
+    public static BsonTimestamp getOldestOplogTimestamp(MongoCollection<BsonDocument> collection) {
+        return getOplogTimestamp(collection, 1);
+    }
+
+    /**
+     * Compares two oplog timestamps by time and increment. Both are unsigned 32 bit values.
+     *
+     * @param a The first timestamp
+     * @param b The second timestamp
+     * @return A negative number, zero or a positive number if {@code a} is before, equal to or after {@code b}
+     */
+    public static int compare(BsonTimestamp a, BsonTimestamp b) {
+        int result = compareUnsigned(a.getTime(), b.getTime());
+        return result != 0 ? result : compareUnsigned(a.getInc(), b.getInc());
+    }
+
+    private static int compareUnsigned(int a, int b) {
+        int x = a + Integer.MIN_VALUE;
+        int y = b + Integer.MIN_VALUE;
+        return x < y ? -1 : (x == y ? 0 : 1);
+    }
+
+    private static BsonTimestamp getOplogTimestamp(MongoCollection<BsonDocument> collection, int order) {
         final AtomicReference<BsonTimestamp> timestamp = new AtomicReference<>();
         final AtomicReference<Throwable> error = new AtomicReference<>();
         final CountDownLatch waiter = new CountDownLatch(1);
-        collection.find().sort(new Document("$natural", -1)).limit(1).first(new SingleResultCallback<BsonDocument>() {
+        collection.find().sort(new Document("$natural", order)).limit(1).first(new SingleResultCallback<BsonDocument>() {
             @Override
             public void onResult(BsonDocument document, Throwable throwable) {
                 if (throwable != null)
@@ -58,4 +103,96 @@ public class OpLogUtils {
     public static MongoCollection<BsonDocument> getCollection(MongoClient client) {
         return client.getDatabase(OPLOG_DATABASE).getCollection(OPLOG_COLLECTION, BsonDocument.class);
     }
+
+    /**
+     * Returns the {@code MongoCollection} which contains the oplog of a replica set member, e.g. a shard.
+     *
+     * @param client The {@link MongoClient} connected to the replica set
+     * @return The {@code MongoCollection} which contains the oplog
+     */
+    public static MongoCollection<BsonDocument> getReplicaSetCollection(MongoClient client) {
+        return client.getDatabase(OPLOG_DATABASE).getCollection(REPLICA_SET_OPLOG_COLLECTION, BsonDocument.class);
+    }
+
+    /**
+     * Reads the shards of a sharded cluster from its config database. The connection strings of the shards keep the
+     * credentials and options of the connection string of the cluster, only hosts and replica set are replaced.
+     *
+     * @param client The {@link MongoClient} connected to a {@code mongos}
+     * @param uri The connection string uri of the cluster
+     * @return A {@link Map} from shard id to a connection string uri of the shard
+     */
+    public static Map<String, String> getShards(MongoClient client, final String uri) {
+        final Map<String, String> shards = Maps.newLinkedHashMap();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch waiter = new CountDownLatch(1);
+        client.getDatabase(CONFIG_DATABASE).getCollection(SHARDS_COLLECTION, BsonDocument.class).find().forEach(
+                new Block<BsonDocument>() {
+                    @Override
+                    public void apply(BsonDocument document) {
+                        shards.put(document.getString("_id").getValue(), toConnectionString(uri, document.getString("host").getValue()));
+                    }
+                },
+                OperationResultCallback.<Void>create(error, waiter)
+        );
+        ConcurrentUtils.safeAwait(waiter);
+        Throwable realError = error.get();
+        if (realError != null)
+            throw Throwables.propagate(realError);
+        return shards;
+    }
+
+    /**
+     * Replaces hosts and replica set of a connection string uri by the ones of a shard.
+     *
+     * @param uri The connection string uri of the cluster
+     * @param host The host of the shard as given in {@code config.shards}
+     * @return The connection string uri of the shard
+     */
+    static String toConnectionString(String uri, String host) {
+        // Hosts of replica set shards are given as "<replica set>/<host>,<host>".
+        int separator = host.indexOf('/');
+        String hosts = separator < 0 ? host : host.substring(separator + 1);
+        String replicaSet = separator < 0 ? null : host.substring(0, separator);
+
+        boolean srv = uri.startsWith(SRV_SCHEME);
+        String rest = uri.substring(srv ? SRV_SCHEME.length() : SCHEME.length());
+        int authorityEnd = indexOfAny(rest, '/', '?');
+        String authority = rest.substring(0, authorityEnd);
+        String path = rest.substring(authorityEnd);
+        String options = "";
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            options = path.substring(query + 1);
+            path = path.substring(0, query);
+        }
+
+        StringBuilder result = new StringBuilder(SCHEME);
+        int credentials = authority.lastIndexOf('@');
+        if (credentials >= 0)
+            result.append(authority, 0, credentials + 1);
+        result.append(hosts).append(path.isEmpty() ? "/" : path);
+        List<String> parameters = Lists.newArrayList();
+        for (String option : options.split("[&;]")) {
+            if (!option.isEmpty() && !option.toLowerCase().startsWith("replicaset="))
+                parameters.add(option);
+        }
+        // The shards' hosts are not resolved from DNS, but SRV connections imply TLS.
+        if (srv && !options.toLowerCase().matches("(^|.*[&;])(ssl|tls)=.*"))
+            parameters.add("ssl=true");
+        if (replicaSet != null)
+            parameters.add("replicaSet=" + replicaSet);
+        if (!parameters.isEmpty())
+            result.append('?').append(Joiner.on('&').join(parameters));
+        return result.toString();
+    }
+
+    private static int indexOfAny(String value, char first, char second) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == first || c == second)
+                return i;
+        }
+        return value.length();
+    }
 }
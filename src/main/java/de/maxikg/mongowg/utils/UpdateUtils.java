@@ -0,0 +1,194 @@
+package de.maxikg.mongowg.utils;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DecoderContext;
+
+import java.util.Map;
+
+/**
+ * Utilities to create and apply field level update documents.
+ */
+public class UpdateUtils {
+
+    /**
+     * The field which is compared key by key instead of as a whole.
+     */
+    private static final String FLAGS = "flags";
+
+    /**
+     * Version marker of oplog update entries. Version 1 uses the regular update modifiers.
+     */
+    private static final String OPLOG_VERSION = "$v";
+
+    private UpdateUtils() {
+    }
+
+    /**
+     * Creates an update document which transforms {@code before} into {@code after}. Changed or added top level
+     * fields are part of {@code $set}, removed ones of {@code $unset}. If both documents contain flags, every flag is
+     * compared separately.
+     *
+     * @param before The document as it is stored in the database
+     * @param after The document as it should be stored in the database
+     * @return The update document, which is empty if both documents are equal
+     */
+    public static BsonDocument diff(BsonDocument before, BsonDocument after) {
+        BsonDocument set = new BsonDocument();
+        BsonDocument unset = new BsonDocument();
+
+        for (Map.Entry<String, BsonValue> entry : after.entrySet()) {
+            String key = entry.getKey();
+            BsonValue value = entry.getValue();
+            BsonValue old = before.get(key);
+            if (FLAGS.equals(key) && value.isDocument() && old != null && old.isDocument())
+                diffNested(key, old.asDocument(), value.asDocument(), set, unset);
+            else if (!value.equals(old))
+                set.put(key, value);
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key))
+                unset.put(key, new BsonInt32(1));
+        }
+
+        BsonDocument update = new BsonDocument();
+        if (!set.isEmpty())
+            update.put("$set", set);
+        if (!unset.isEmpty())
+            update.put("$unset", unset);
+        return update;
+    }
+
+    /**
+     * Adds all fields of {@code document} which are not touched by {@code update} as {@code $setOnInsert}. This allows
+     * to use a partial update as upsert, so the complete document is created if it doesn't exist anymore.
+     *
+     * @param update The update document as created by {@link #diff(BsonDocument, BsonDocument)}
+     * @param document The complete document
+     * @return The given {@code update}
+     */
+    public static BsonDocument addSetOnInsert(BsonDocument update, BsonDocument document) {
+        BsonDocument set = update.containsKey("$set") ? update.getDocument("$set") : new BsonDocument();
+        BsonDocument unset = update.containsKey("$unset") ? update.getDocument("$unset") : new BsonDocument();
+        BsonDocument setOnInsert = new BsonDocument();
+        for (Map.Entry<String, BsonValue> entry : document.entrySet()) {
+            String key = entry.getKey();
+            if (set.containsKey(key))
+                continue;
+            if (entry.getValue().isDocument() && (containsNestedKey(set, key) || containsNestedKey(unset, key))) {
+                for (Map.Entry<String, BsonValue> nested : entry.getValue().asDocument().entrySet()) {
+                    String path = key + "." + nested.getKey();
+                    if (!set.containsKey(path))
+                        setOnInsert.put(path, nested.getValue());
+                }
+            } else {
+                setOnInsert.put(key, entry.getValue());
+            }
+        }
+        if (!setOnInsert.isEmpty())
+            update.put("$setOnInsert", setOnInsert);
+        return update;
+    }
+
+    /**
+     * Applies the {@code $set} and {@code $unset} modifiers of an update document to a copy of the given document.
+     * Dotted field names are resolved to nested documents. The version marker {@code $v: 1} of oplog entries is
+     * ignored.
+     *
+     * @param document The original document, which is not modified
+     * @param update The update document
+     * @return The updated copy
+     * @throws IllegalArgumentException Thrown, if the update contains unsupported modifiers
+     */
+    public static BsonDocument apply(BsonDocument document, BsonDocument update) {
+        // Raw documents are immutable, also their clones.
+        BsonDocument result = document instanceof RawBsonDocument
+                ? new BsonDocumentCodec().decode(new BsonBinaryReader(((RawBsonDocument) document).getByteBuffer().asNIO()), DecoderContext.builder().build())
+                : document.clone();
+        for (Map.Entry<String, BsonValue> modifier : update.entrySet()) {
+            String operator = modifier.getKey();
+            if (OPLOG_VERSION.equals(operator) && isVersionOne(modifier.getValue())) {
+                continue;
+            } else if ("$set".equals(operator)) {
+                for (Map.Entry<String, BsonValue> entry : modifier.getValue().asDocument().entrySet())
+                    set(result, entry.getKey(), entry.getValue());
+            } else if ("$unset".equals(operator)) {
+                for (String path : modifier.getValue().asDocument().keySet())
+                    unset(result, path);
+            } else {
+                throw new IllegalArgumentException("Unsupported update operator: " + operator);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if the given document is an update document, which means that it only contains modifiers.
+     *
+     * @param document The document
+     * @return {@code true} if every field name starts with {@code $}, otherwise {@code false}
+     */
+    public static boolean isUpdate(BsonDocument document) {
+        if (document.isEmpty())
+            return false;
+        for (String key : document.keySet()) {
+            if (!key.startsWith("$"))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isVersionOne(BsonValue value) {
+        return (value.isInt32() && value.asInt32().getValue() == 1) || (value.isDouble() && value.asDouble().getValue() == 1);
+    }
+
+    private static void diffNested(String prefix, BsonDocument before, BsonDocument after, BsonDocument set, BsonDocument unset) {
+        for (Map.Entry<String, BsonValue> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey())))
+                set.put(prefix + "." + entry.getKey(), entry.getValue());
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key))
+                unset.put(prefix + "." + key, new BsonInt32(1));
+        }
+    }
+
+    private static boolean containsNestedKey(BsonDocument document, String prefix) {
+        String dotted = prefix + ".";
+        for (String key : document.keySet()) {
+            if (key.startsWith(dotted))
+                return true;
+        }
+        return false;
+    }
+
+    private static void set(BsonDocument document, String path, BsonValue value) {
+        int index = path.indexOf('.');
+        if (index < 0) {
+            document.put(path, value);
+            return;
+        }
+        String key = path.substring(0, index);
+        BsonValue nested = document.get(key);
+        if (nested == null || !nested.isDocument()) {
+            nested = new BsonDocument();
+            document.put(key, nested);
+        }
+        set(nested.asDocument(), path.substring(index + 1), value);
+    }
+
+    private static void unset(BsonDocument document, String path) {
+        int index = path.indexOf('.');
+        if (index < 0) {
+            document.remove(path);
+            return;
+        }
+        BsonValue nested = document.get(path.substring(0, index));
+        if (nested != null && nested.isDocument())
+            unset(nested.asDocument(), path.substring(index + 1));
+    }
+}
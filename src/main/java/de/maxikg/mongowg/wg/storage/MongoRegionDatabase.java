@@ -6,8 +6,10 @@ import com.sk89q.worldguard.protection.managers.storage.RegionDatabase;
 import com.sk89q.worldguard.protection.managers.storage.StorageException;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import de.maxikg.mongowg.RegionStorageAdapter;
+import de.maxikg.mongowg.WriteBehindQueue;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The {@code RegionDatabase} implementation for MongoWG.
@@ -16,6 +18,8 @@ public class MongoRegionDatabase implements RegionDatabase {
 
     private final RegionStorageAdapter storageAdapter;
     private final String world;
+    private final WriteBehindQueue writeBehindQueue;
+    private final AtomicReference<Set<ProtectedRegion>> preloaded;
 
     /**
      * Constructor.
@@ -24,8 +28,33 @@ public class MongoRegionDatabase implements RegionDatabase {
      * @param world The name of the world
      */
     public MongoRegionDatabase(RegionStorageAdapter storageAdapter, String world) {
+        this(storageAdapter, world, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param storageAdapter The {@link RegionStorageAdapter} which should used
+     * @param world The name of the world
+     * @param writeBehindQueue The {@link WriteBehindQueue} for changes or {@code null} to write them immediately
+     */
+    public MongoRegionDatabase(RegionStorageAdapter storageAdapter, String world, WriteBehindQueue writeBehindQueue) {
+        this(storageAdapter, world, writeBehindQueue, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param storageAdapter The {@link RegionStorageAdapter} which should used
+     * @param world The name of the world
+     * @param writeBehindQueue The {@link WriteBehindQueue} for changes or {@code null} to write them immediately
+     * @param preloaded The already loaded regions which are returned by the first {@link #loadAll()} or {@code null}
+     */
+    public MongoRegionDatabase(RegionStorageAdapter storageAdapter, String world, WriteBehindQueue writeBehindQueue, Set<ProtectedRegion> preloaded) {
         this.storageAdapter = Preconditions.checkNotNull(storageAdapter, "storageAdapter must be not null.");
         this.world = Preconditions.checkNotNull(world, "world must be not null.");
+        this.writeBehindQueue = writeBehindQueue;
+        this.preloaded = new AtomicReference<>(preloaded);
     }
 
     /**
@@ -41,6 +70,11 @@ public class MongoRegionDatabase implements RegionDatabase {
      */
     @Override
     public Set<ProtectedRegion> loadAll() throws StorageException {
+        Set<ProtectedRegion> regions = preloaded.getAndSet(null);
+        if (regions != null)
+            return regions;
+        if (writeBehindQueue != null)
+            writeBehindQueue.flush(world);
         return storageAdapter.loadAll(world);
     }
 
@@ -49,6 +83,9 @@ public class MongoRegionDatabase implements RegionDatabase {
      */
     @Override
     public void saveAll(Set<ProtectedRegion> set) throws StorageException {
+        preloaded.set(null);
+        if (writeBehindQueue != null)
+            writeBehindQueue.flush(world);
         storageAdapter.saveAll(world, set);
     }
 
@@ -57,6 +94,9 @@ public class MongoRegionDatabase implements RegionDatabase {
      */
     @Override
     public void saveChanges(RegionDifference regionDifference) throws StorageException {
-        storageAdapter.saveChanges(world, regionDifference);
+        if (writeBehindQueue != null)
+            writeBehindQueue.enqueue(world, regionDifference);
+        else
+            storageAdapter.saveChanges(world, regionDifference);
     }
 }
@@ -3,23 +3,34 @@ package de.maxikg.mongowg.wg.storage;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.mongodb.async.client.MongoDatabase;
 import com.sk89q.worldguard.protection.managers.storage.RegionDatabase;
 import com.sk89q.worldguard.protection.managers.storage.RegionDriver;
 import com.sk89q.worldguard.protection.managers.storage.StorageException;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import de.maxikg.mongowg.RegionStorageAdapter;
+import de.maxikg.mongowg.WriteBehindQueue;
+import de.maxikg.mongowg.snapshot.SnapshotManager;
 import org.bukkit.Server;
 import org.bukkit.World;
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The {@code RegionDriver} implementation for MongoWG.
  */
 public class MongoRegionDriver implements RegionDriver {
 
+    private static final Logger LOGGER = Logger.getLogger(MongoRegionDriver.class.getName());
     private static final Function<World, String> WORLD_NAME = new Function<World, String>() {
         @Nullable
         @Override
@@ -30,6 +41,9 @@ public class MongoRegionDriver implements RegionDriver {
 
     private final Server server;
     private final RegionStorageAdapter storageAdapter;
+    private final WriteBehindQueue writeBehindQueue;
+    private final ConcurrentMap<String, Set<ProtectedRegion>> preloaded = Maps.newConcurrentMap();
+    private SnapshotManager snapshotManager;
 
     /**
      * Constructor.
@@ -38,8 +52,58 @@ public class MongoRegionDriver implements RegionDriver {
      * @param storageAdapter The {@link RegionStorageAdapter} which should be used
      */
     public MongoRegionDriver(Server server, RegionStorageAdapter storageAdapter) {
+        this(server, storageAdapter, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param server The {@link Server} on which this {@code RegionDriver} acts
+     * @param storageAdapter The {@link RegionStorageAdapter} which should be used
+     * @param writeBehindQueue The {@link WriteBehindQueue} for changes or {@code null} to write them immediately
+     */
+    public MongoRegionDriver(Server server, RegionStorageAdapter storageAdapter, WriteBehindQueue writeBehindQueue) {
         this.server = Preconditions.checkNotNull(server, "server must be not null.");
         this.storageAdapter = Preconditions.checkNotNull(storageAdapter, "storageAdapter must be not null.");
+        this.writeBehindQueue = writeBehindQueue;
+    }
+
+    /**
+     * Set's the {@link SnapshotManager} which is used by {@link #preload()}. Every world for which a
+     * {@link RegionDatabase} is created is registered at it, so it is snapshotted even if it wasn't preloaded.
+     *
+     * @param snapshotManager The {@link SnapshotManager} or {@code null} to disable snapshots
+     */
+    public void setSnapshotManager(SnapshotManager snapshotManager) {
+        this.snapshotManager = snapshotManager;
+    }
+
+    /**
+     * Loads the regions of all worlds of the server. Worlds with a usable snapshot are loaded from it, all others with
+     * a single query. Each result is handed to the next {@link RegionDatabase} which is created for its world, so its
+     * first {@code loadAll()} doesn't query the database again. If the query fails, every world is loaded on its own
+     * as usual.
+     */
+    public void preload() {
+        Set<String> worlds = Sets.newHashSet(Iterables.transform(server.getWorlds(), WORLD_NAME));
+        if (snapshotManager != null) {
+            for (String world : ImmutableSet.copyOf(worlds)) {
+                Set<ProtectedRegion> regions = snapshotManager.load(world);
+                if (regions != null) {
+                    preloaded.put(world, regions);
+                    worlds.remove(world);
+                }
+            }
+        }
+        if (worlds.isEmpty())
+            return;
+        try {
+            if (writeBehindQueue != null)
+                writeBehindQueue.flush();
+            preloaded.putAll(storageAdapter.loadAll(worlds));
+        } catch (StorageException e) {
+            LOGGER.log(Level.WARNING, "Cannot preload regions. Worlds are loaded one by one.", e);
+        }
     }
 
     /**
@@ -47,7 +111,9 @@ public class MongoRegionDriver implements RegionDriver {
      */
     @Override
     public RegionDatabase get(String name) {
-        return new MongoRegionDatabase(storageAdapter, name);
+        if (snapshotManager != null)
+            snapshotManager.register(name);
+        return new MongoRegionDatabase(storageAdapter, name, writeBehindQueue, preloaded.remove(name));
     }
 
     /**
@@ -0,0 +1,73 @@
+package de.maxikg.mongowg;
+
+import com.google.common.collect.Lists;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class RegionIdIndexTest {
+
+    @Test
+    public void testBidirectionalLookup() {
+        RegionIdIndex index = new RegionIdIndex();
+        ObjectId id = new ObjectId();
+        index.put(id, "world", "spawn");
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(RegionStorageAdapter.RegionPath.create("world", "spawn"), index.getPath(id));
+        Assert.assertEquals(id, index.getId("world", "spawn"));
+        Assert.assertNull(index.getId("world_nether", "spawn"));
+        Assert.assertNull(index.getPath(new ObjectId()));
+    }
+
+    @Test
+    public void testReplace() {
+        RegionIdIndex index = new RegionIdIndex();
+        ObjectId first = new ObjectId();
+        ObjectId second = new ObjectId();
+        index.put(first, "world", "spawn");
+        index.put(second, "world", "spawn");
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertNull(index.getPath(first));
+        Assert.assertEquals(second, index.getId("world", "spawn"));
+
+        index.put(second, "world", "market");
+        Assert.assertEquals(1, index.size());
+        Assert.assertNull(index.getId("world", "spawn"));
+        Assert.assertEquals(RegionStorageAdapter.RegionPath.create("world", "market"), index.getPath(second));
+    }
+
+    @Test
+    public void testManyEntriesAndRemoval() {
+        RegionIdIndex index = new RegionIdIndex();
+        List<ObjectId> ids = Lists.newArrayList();
+        for (int i = 0; i < 10000; i++) {
+            ObjectId id = new ObjectId();
+            ids.add(id);
+            index.put(id, i % 2 == 0 ? "world" : "world_nether", "region" + i);
+        }
+        Assert.assertEquals(10000, index.size());
+
+        for (int i = 0; i < 10000; i += 3)
+            Assert.assertTrue(index.remove(ids.get(i)));
+        Assert.assertFalse(index.remove(ids.get(0)));
+        Assert.assertTrue(index.remove("world", "region2"));
+
+        for (int i = 0; i < 10000; i++) {
+            String world = i % 2 == 0 ? "world" : "world_nether";
+            boolean present = i % 3 != 0 && i != 2;
+            Assert.assertEquals(present ? ids.get(i) : null, index.getId(world, "region" + i));
+            Assert.assertEquals(present ? RegionStorageAdapter.RegionPath.create(world, "region" + i) : null, index.getPath(ids.get(i)));
+        }
+
+        int remaining = index.size();
+        int removed = index.removeWorld("world");
+        Assert.assertEquals(remaining - removed, index.size());
+        for (int i = 1; i < 10000; i += 2)
+            Assert.assertEquals(i % 3 != 0 ? ids.get(i) : null, index.getId("world_nether", "region" + i));
+        Assert.assertNull(index.getId("world", "region4"));
+    }
+}
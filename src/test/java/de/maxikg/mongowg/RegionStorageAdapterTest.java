@@ -0,0 +1,103 @@
+package de.maxikg.mongowg;
+
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import de.maxikg.mongowg.codec.BlockVector2DCodec;
+import de.maxikg.mongowg.codec.BlockVectorCodec;
+import de.maxikg.mongowg.codec.DefaultDomainCodec;
+import de.maxikg.mongowg.codec.ProcessingProtectedRegionCodec;
+import de.maxikg.mongowg.model.ProcessingProtectedRegion;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.DocumentCodecProvider;
+import org.bson.codecs.ValueCodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class RegionStorageAdapterTest {
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private CodecRegistry codecRegistry;
+    private RegionStorageAdapter storageAdapter;
+
+    @Before
+    public void prepare() {
+        CodecRegistry common = CodecRegistries.fromRegistries(
+                CodecRegistries.fromProviders(new ValueCodecProvider(), new DocumentCodecProvider()),
+                CodecRegistries.fromCodecs(new BlockVector2DCodec(), new BlockVectorCodec(), new DefaultDomainCodec())
+        );
+        codecRegistry = CodecRegistries.fromRegistries(common, CodecRegistries.fromCodecs(new ProcessingProtectedRegionCodec(common)));
+        final MongoCollection<?> collection = proxy(MongoCollection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(method.getName());
+                return "withCodecRegistry".equals(method.getName()) ? proxy : null;
+            }
+        });
+        MongoDatabase database = proxy(MongoDatabase.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getCodecRegistry".equals(method.getName()))
+                    return codecRegistry;
+                return "getCollection".equals(method.getName()) ? collection : null;
+            }
+        });
+        storageAdapter = new RegionStorageAdapter(database);
+    }
+
+    @Test
+    public void testApplyUnknownPayload() {
+        // Oplog update of newer servers, which is neither a modifier document nor a region.
+        BsonDocument update = new BsonDocument("$v", new BsonInt32(2))
+                .append("diff", new BsonDocument("u", new BsonDocument("priority", new BsonInt32(1))));
+
+        Assert.assertNull(storageAdapter.applyUpdate(new ObjectId(), update));
+    }
+
+    @Test
+    public void testSaveAllKeepsUnappliedRegions() {
+        // Remote region which was rebuilt from the oplog, but not yet added to WorldGuard.
+        Assert.assertNotNull(storageAdapter.applyUpdate(new ObjectId(), createDocument("remote")));
+
+        storageAdapter.saveAllAsync("world", Collections.<ProtectedRegion>emptySet());
+
+        Assert.assertFalse(calls.contains("findOneAndDelete"));
+    }
+
+    @Test
+    public void testSaveAllDeletesRemovedRegions() {
+        storageAdapter.loadAllAsync("world", Collections.singletonList(createDocument("removed").append("_id", new BsonObjectId(new ObjectId()))));
+
+        storageAdapter.saveAllAsync("world", Collections.<ProtectedRegion>emptySet());
+
+        Assert.assertTrue(calls.contains("findOneAndDelete"));
+    }
+
+    private BsonDocument createDocument(String name) {
+        ProtectedRegion region = new ProtectedCuboidRegion(name, new BlockVector(0, 0, 0), new BlockVector(16, 16, 16));
+        BsonDocument document = new BsonDocument();
+        codecRegistry.get(ProcessingProtectedRegion.class).encode(new BsonDocumentWriter(document), new ProcessingProtectedRegion(region, "world"), EncoderContext.builder().build());
+        return document;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(RegionStorageAdapterTest.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+}
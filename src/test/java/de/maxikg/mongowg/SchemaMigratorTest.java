@@ -0,0 +1,46 @@
+package de.maxikg.mongowg;
+
+import com.google.common.collect.ImmutableList;
+import com.sk89q.worldedit.BlockVector2D;
+import de.maxikg.mongowg.codec.CompactGeometry;
+import de.maxikg.mongowg.codec.DefaultDomainCodec;
+import de.maxikg.mongowg.codec.ProcessingProtectedRegionCodec;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class SchemaMigratorTest {
+
+    @Test
+    public void testCreateUpdate() {
+        UUID player = UUID.randomUUID();
+        BsonDocument document = new BsonDocument("_id", new BsonInt32(1))
+                .append("points", new BsonArray(ImmutableList.of(
+                        new BsonDocument("x", new BsonInt32(1)).append("z", new BsonInt32(2)),
+                        new BsonDocument("x", new BsonInt32(3)).append("z", new BsonInt32(-4))
+                )))
+                .append("owners", new BsonDocument("players", new BsonArray(ImmutableList.of(new BsonString(player.toString())))));
+
+        BsonDocument set = SchemaMigrator.createUpdate(document, true, true).getDocument("$set");
+
+        Assert.assertEquals(new BsonInt32(ProcessingProtectedRegionCodec.SCHEMA_V2), set.get(ProcessingProtectedRegionCodec.SCHEMA_FIELD));
+        Assert.assertEquals(ImmutableList.of(new BlockVector2D(1, 2), new BlockVector2D(3, -4)), CompactGeometry.unpackPoints(set.getBinary("points")));
+        Assert.assertEquals(new BsonArray(ImmutableList.of(DefaultDomainCodec.toBinary(player))), set.get("owners.players"));
+        Assert.assertFalse(set.containsKey("members.players"));
+    }
+
+    @Test
+    public void testCreateUpdateWithoutGeometry() {
+        BsonDocument document = new BsonDocument("_id", new BsonInt32(1))
+                .append("min", new BsonDocument("x", new BsonInt32(1)).append("y", new BsonInt32(2)).append("z", new BsonInt32(3)));
+
+        BsonDocument set = SchemaMigrator.createUpdate(document, false, true).getDocument("$set");
+
+        Assert.assertTrue(set.isEmpty());
+    }
+}
@@ -1,6 +1,11 @@
 package de.maxikg.mongowg.codec;
 
 import com.sk89q.worldguard.domains.DefaultDomain;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonValue;
 import org.bson.codecs.Codec;
 import org.bson.codecs.DecoderContext;
 import org.bson.codecs.EncoderContext;
@@ -32,4 +37,34 @@ public class DefaultDomainCodecTest {
         Assert.assertEquals(domain.getUniqueIds(), other.getUniqueIds());
         Assert.assertEquals(domain.getGroups(), other.getGroups());
     }
+
+    @Test
+    public void testBinaryUuids() {
+        Codec<DefaultDomain> codec = new DefaultDomainCodec(true);
+        DefaultDomain domain = new DefaultDomain();
+        domain.addPlayer(UUID.randomUUID());
+        domain.addPlayer(UUID.randomUUID());
+        domain.addGroup("test_group");
+
+        BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), domain, EncoderContext.builder().build());
+        BsonValue player = document.getArray("players").get(0);
+        DefaultDomain other = codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+
+        Assert.assertEquals(BsonBinarySubType.UUID_STANDARD.getValue(), player.asBinary().getType());
+        Assert.assertEquals(domain.getUniqueIds(), other.getUniqueIds());
+        Assert.assertEquals(domain.getGroups(), other.getGroups());
+    }
+
+    @Test
+    public void testBinaryUuidsReadStrings() {
+        DefaultDomain domain = new DefaultDomain();
+        domain.addPlayer(UUID.randomUUID());
+
+        BsonDocument document = new BsonDocument();
+        DefaultDomainCodec.INSTANCE.encode(new BsonDocumentWriter(document), domain, EncoderContext.builder().build());
+        DefaultDomain other = new DefaultDomainCodec(true).decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+
+        Assert.assertEquals(domain.getUniqueIds(), other.getUniqueIds());
+    }
 }
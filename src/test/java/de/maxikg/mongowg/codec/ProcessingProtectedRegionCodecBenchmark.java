@@ -0,0 +1,91 @@
+package de.maxikg.mongowg.codec;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.BlockVector2D;
+import com.sk89q.worldguard.protection.flags.DefaultFlag;
+import com.sk89q.worldguard.protection.flags.StateFlag;
+import com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion;
+import com.sk89q.worldguard.protection.regions.ProtectedPolygonalRegion;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import de.maxikg.mongowg.model.ProcessingProtectedRegion;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodecProvider;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.ValueCodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.io.BasicOutputBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decode throughput of {@link ProcessingProtectedRegionCodec}. Not run by the test suite, start it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=<this class>}.
+ */
+public class ProcessingProtectedRegionCodecBenchmark {
+
+    private static final int REGIONS = 10000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        CodecRegistry codecRegistry = CodecRegistries.fromRegistries(
+                CodecRegistries.fromProviders(new ValueCodecProvider(), new DocumentCodecProvider()),
+                CodecRegistries.fromCodecs(new BlockVector2DCodec(), new BlockVectorCodec(), new DefaultDomainCodec())
+        );
+        ProcessingProtectedRegionCodec codec = new ProcessingProtectedRegionCodec(codecRegistry);
+
+        List<byte[]> documents = Lists.newArrayListWithCapacity(REGIONS);
+        for (int i = 0; i < REGIONS; i++) {
+            BasicOutputBuffer buffer = new BasicOutputBuffer();
+            codec.encode(new BsonBinaryWriter(buffer), new ProcessingProtectedRegion(createRegion(i), "world"), EncoderContext.builder().build());
+            documents.add(buffer.toByteArray());
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            decodeAll(codec, documents);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        long checksum = 0;
+        for (int i = 0; i < ROUNDS; i++)
+            checksum += decodeAll(codec, documents);
+        long nanos = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+
+        long decoded = (long) REGIONS * ROUNDS;
+        System.out.println("Decoded " + decoded + " regions in " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms ("
+                + (decoded * 1000000000L / nanos) + " regions/s, " + (nanos / decoded) + " ns/region, checksum " + checksum + ").");
+    }
+
+    private static long decodeAll(ProcessingProtectedRegionCodec codec, List<byte[]> documents) {
+        long checksum = 0;
+        DecoderContext context = DecoderContext.builder().build();
+        for (byte[] document : documents)
+            checksum += codec.decode(new BsonBinaryReader(ByteBuffer.wrap(document)), context).getRegion().getPriority();
+        return checksum;
+    }
+
+    private static ProtectedRegion createRegion(int i) {
+        ProtectedRegion region;
+        if (i % 4 == 0) {
+            region = new ProtectedPolygonalRegion("polygon" + i, ImmutableList.of(
+                    new BlockVector2D(i, 0), new BlockVector2D(i, 16), new BlockVector2D(i + 16, 16), new BlockVector2D(i + 16, 0)
+            ), 0, 255);
+        } else {
+            region = new ProtectedCuboidRegion("cuboid" + i, new BlockVector(i, 0, i), new BlockVector(i + 16, 255, i + 16));
+        }
+        region.setPriority(i % 10);
+        region.getOwners().addPlayer(UUID.randomUUID());
+        region.getMembers().addPlayer(UUID.randomUUID());
+        region.getMembers().addGroup("members");
+        region.setFlag(DefaultFlag.BUILD, StateFlag.State.DENY);
+        region.setFlag(DefaultFlag.GREET_MESSAGE, "Welcome to region " + i);
+        return region;
+    }
+}
@@ -5,12 +5,18 @@ import com.google.common.collect.ImmutableSet;
 import com.sk89q.worldedit.BlockVector;
 import com.sk89q.worldedit.BlockVector2D;
 import com.sk89q.worldguard.protection.flags.DefaultFlag;
+import com.sk89q.worldguard.protection.flags.Flag;
+import com.sk89q.worldguard.protection.flags.RegionGroup;
 import com.sk89q.worldguard.protection.flags.StateFlag;
 import com.sk89q.worldguard.protection.regions.GlobalProtectedRegion;
 import com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion;
 import com.sk89q.worldguard.protection.regions.ProtectedPolygonalRegion;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import de.maxikg.mongowg.model.ProcessingProtectedRegion;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.Document;
 import org.bson.codecs.DecoderContext;
 import org.bson.codecs.DocumentCodecProvider;
 import org.bson.codecs.EncoderContext;
@@ -27,16 +33,19 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 
 public class ProcessingProtectedRegionCodecTest {
 
+    private CodecRegistry codecRegistry;
     private ProcessingProtectedRegionCodec codec;
 
     @Before
     public void prepare() {
-        CodecRegistry codecRegistry = CodecRegistries.fromRegistries(
+        codecRegistry = CodecRegistries.fromRegistries(
                 CodecRegistries.fromProviders(new ValueCodecProvider(), new DocumentCodecProvider()),
                 CodecRegistries.fromCodecs(new BlockVector2DCodec(), new BlockVectorCodec(), new DefaultDomainCodec())
         );
@@ -88,6 +97,95 @@ public class ProcessingProtectedRegionCodecTest {
         Assert.assertEquals(container, other);
     }
 
+    @Test
+    public void testSchemaV2ForCuboid() {
+        ProtectedRegion region = new ProtectedCuboidRegion("cuboid", new BlockVector(4, -4, 4), new BlockVector(42, 42, 42));
+        fillRegion(region);
+        ProcessingProtectedRegion container = new ProcessingProtectedRegion(region, "world");
+        ProcessingProtectedRegionCodec v2Codec = new ProcessingProtectedRegionCodec(codecRegistry, ProcessingProtectedRegionCodec.SCHEMA_V2);
+
+        BsonDocument encoded = new BsonDocument();
+        v2Codec.encode(new BsonDocumentWriter(encoded), container, EncoderContext.builder().build());
+
+        Assert.assertEquals(ProcessingProtectedRegionCodec.SCHEMA_V2, encoded.getInt32(ProcessingProtectedRegionCodec.SCHEMA_FIELD).getValue());
+        Assert.assertTrue(encoded.get("min").isArray());
+        Assert.assertEquals(container, v2Codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build()));
+        Assert.assertEquals(container, codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build()));
+    }
+
+    @Test
+    public void testSchemaV2ForPolygonal() {
+        ProtectedRegion region = new ProtectedPolygonalRegion("polygon", ImmutableList.of(new BlockVector2D(0, 0), new BlockVector2D(0, 4), new BlockVector2D(-4, 4), new BlockVector2D(-4, 0)), 0, 64);
+        fillRegion(region);
+        ProcessingProtectedRegion container = new ProcessingProtectedRegion(region, "world");
+        ProcessingProtectedRegionCodec v2Codec = new ProcessingProtectedRegionCodec(codecRegistry, ProcessingProtectedRegionCodec.SCHEMA_V2);
+
+        BsonDocument encoded = new BsonDocument();
+        v2Codec.encode(new BsonDocumentWriter(encoded), container, EncoderContext.builder().build());
+
+        Assert.assertEquals(4 * 8, encoded.getBinary("points").getData().length);
+        Assert.assertEquals(container, v2Codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build()));
+    }
+
+    @Test
+    public void testSchemaV2ReadsV1() {
+        ProtectedRegion region = new ProtectedPolygonalRegion("polygon", ImmutableList.of(new BlockVector2D(0, 0), new BlockVector2D(0, 4), new BlockVector2D(4, 4)), 0, 64);
+        fillRegion(region);
+        ProcessingProtectedRegion container = new ProcessingProtectedRegion(region, "world");
+        ProcessingProtectedRegionCodec v2Codec = new ProcessingProtectedRegionCodec(codecRegistry, ProcessingProtectedRegionCodec.SCHEMA_V2);
+
+        BsonDocument encoded = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(encoded), container, EncoderContext.builder().build());
+
+        Assert.assertFalse(encoded.containsKey(ProcessingProtectedRegionCodec.SCHEMA_FIELD));
+        Assert.assertEquals(container, v2Codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build()));
+    }
+
+    @Test
+    public void testInterning() throws IOException {
+        ValueInterner interner = new ValueInterner();
+        ProcessingProtectedRegionCodec internCodec = new ProcessingProtectedRegionCodec(codecRegistry, ProcessingProtectedRegionCodec.SCHEMA_V1, interner);
+        ProtectedRegion region = new ProtectedCuboidRegion("cuboid", new BlockVector(4, 4, 4), new BlockVector(42, 42, 42));
+        fillRegion(region);
+
+        ProcessingProtectedRegion first;
+        ProcessingProtectedRegion second;
+        try (StringWriter sw = new StringWriter()) {
+            codec.encode(new JsonWriter(sw), new ProcessingProtectedRegion(region, "world"), EncoderContext.builder().build());
+            first = internCodec.decode(new JsonReader(sw.toString()), DecoderContext.builder().build());
+            second = internCodec.decode(new JsonReader(sw.toString()), DecoderContext.builder().build());
+        }
+
+        Assert.assertEquals(first, second);
+        Assert.assertSame(first.getWorld(), second.getWorld());
+        Assert.assertSame(first.getRegion().getFlag(DefaultFlag.ENTRY_DENY_MESSAGE), second.getRegion().getFlag(DefaultFlag.ENTRY_DENY_MESSAGE));
+        Assert.assertTrue(interner.getHitCount() > 0);
+    }
+
+    @Test
+    public void testFlagsEqualDocumentEncoding() {
+        ProtectedRegion region = new ProtectedCuboidRegion("cuboid", new BlockVector(4, 4, 4), new BlockVector(42, 42, 42));
+        fillRegion(region);
+        ProcessingProtectedRegion container = new ProcessingProtectedRegion(region, "world");
+
+        BsonDocument encoded = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(encoded), container, EncoderContext.builder().build());
+
+        Map<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<Flag<?>, Object> entry : region.getFlags().entrySet())
+            sorted.put(entry.getKey().getName(), marshal(entry.getKey(), entry.getValue()));
+        BsonDocument expected = new BsonDocument();
+        codecRegistry.get(Document.class).encode(new BsonDocumentWriter(expected), new Document(sorted), EncoderContext.builder().build());
+
+        Assert.assertEquals(expected, encoded.getDocument("flags"));
+        Assert.assertEquals(container, codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Object marshal(Flag<T> flag, Object value) {
+        return flag.marshal((T) value);
+    }
+
     private static void fillRegion(ProtectedRegion region) {
         region.setPriority(42);
         region.getOwners().addPlayer(UUID.randomUUID());
@@ -97,6 +195,8 @@ public class ProcessingProtectedRegionCodecTest {
         region.setFlag(DefaultFlag.ENTRY_DENY_MESSAGE, "Test entry deny message");
         region.setFlag(DefaultFlag.BUILD, StateFlag.State.ALLOW);
         region.setFlag(DefaultFlag.BLOCK_PLACE, StateFlag.State.ALLOW);
+        region.setFlag(DefaultFlag.BUILD.getRegionGroupFlag(), RegionGroup.MEMBERS);
+        region.setFlag(DefaultFlag.TIME_LOCK, "6000");
         region.setFlag(DefaultFlag.NOTIFY_ENTER, true);
         region.setFlag(DefaultFlag.GAME_MODE, GameMode.CREATIVE);
         region.setFlag(DefaultFlag.ALLOWED_CMDS, (Set<String>) ImmutableSet.of("/test", "/mongowg"));
@@ -0,0 +1,53 @@
+package de.maxikg.mongowg.codec;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public class ValueInternerTest {
+
+    @Test
+    public void testIntern() {
+        ValueInterner interner = new ValueInterner();
+        String first = new String("test_group");
+        String second = new String("test_group");
+
+        Assert.assertSame(first, interner.intern(first));
+        Assert.assertSame(first, interner.intern(second));
+        Assert.assertEquals(1, interner.getHitCount());
+        Assert.assertTrue(interner.getDroppedBytes() > 0);
+    }
+
+    @Test
+    public void testInternUnsupported() {
+        ValueInterner interner = new ValueInterner();
+        Object value = new Object();
+
+        Assert.assertSame(value, interner.intern(value));
+        Assert.assertNull(interner.intern(null));
+        Assert.assertEquals(0, interner.getDroppedBytes());
+    }
+
+    @Test
+    public void testInternValues() {
+        ValueInterner interner = new ValueInterner();
+        UUID uuid = UUID.randomUUID();
+        String command = new String("/test");
+        interner.intern(uuid);
+        interner.intern(command);
+
+        Map<String, Object> flags = Maps.newLinkedHashMap();
+        flags.put("player", new UUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+        flags.put("commands", Sets.<Object>newHashSet(new String("/test")));
+        interner.internValues(flags);
+
+        Assert.assertSame(uuid, flags.get("player"));
+        Assert.assertSame(command, ((Set<?>) flags.get("commands")).iterator().next());
+        Assert.assertEquals(2, interner.getHitCount());
+    }
+}
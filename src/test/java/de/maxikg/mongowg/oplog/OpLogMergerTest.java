@@ -0,0 +1,73 @@
+package de.maxikg.mongowg.oplog;
+
+import com.google.common.collect.Lists;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonTimestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class OpLogMergerTest {
+
+    @Test
+    public void testMergeInTimestampOrder() throws InterruptedException {
+        final List<Integer> merged = Collections.synchronizedList(Lists.<Integer>newArrayList());
+        OpLogMerger merger = new OpLogMerger(new OpLogSink() {
+            @Override
+            public void emit(BsonDocument document) {
+                merged.add(document.getInt32("n").getValue());
+            }
+        }, 60000);
+        OpLogSink first = merger.createLane();
+        OpLogSink second = merger.createLane();
+        Thread thread = new Thread(merger);
+        thread.setDaemon(true);
+        thread.start();
+
+        first.emit(entry(100, 1, 1));
+        first.emit(entry(100, 3, 3));
+        first.emit(entry(102, 0, 5));
+        Thread.sleep(100);
+        Assert.assertTrue(merged.isEmpty());
+
+        second.emit(entry(100, 2, 2));
+        second.emit(entry(101, 0, 4));
+        waitFor(merged, 4);
+        Assert.assertEquals(Lists.newArrayList(1, 2, 3, 4), merged);
+        Assert.assertEquals(1, merger.size());
+        thread.interrupt();
+    }
+
+    @Test
+    public void testDelay() throws InterruptedException {
+        final List<Integer> merged = Collections.synchronizedList(Lists.<Integer>newArrayList());
+        OpLogMerger merger = new OpLogMerger(new OpLogSink() {
+            @Override
+            public void emit(BsonDocument document) {
+                merged.add(document.getInt32("n").getValue());
+            }
+        }, 50);
+        OpLogSink first = merger.createLane();
+        merger.createLane();
+        Thread thread = new Thread(merger);
+        thread.setDaemon(true);
+        thread.start();
+
+        first.emit(entry(100, 1, 1));
+        waitFor(merged, 1);
+        Assert.assertEquals(Lists.newArrayList(1), merged);
+        thread.interrupt();
+    }
+
+    private static void waitFor(List<Integer> merged, int size) throws InterruptedException {
+        for (int i = 0; i < 100 && merged.size() < size; i++)
+            Thread.sleep(20);
+    }
+
+    private static BsonDocument entry(int time, int inc, int n) {
+        return new BsonDocument("ts", new BsonTimestamp(time, inc)).append("n", new BsonInt32(n));
+    }
+}
@@ -2,6 +2,7 @@ package de.maxikg.mongowg.oplog;
 
 import de.maxikg.mongowg.utils.ConcurrentUtils;
 import org.bson.BsonDocument;
+import org.bson.BsonString;
 import org.bson.BsonTimestamp;
 import org.bson.Document;
 import org.bson.codecs.BsonValueCodecProvider;
@@ -72,11 +73,13 @@ public class OpLogParserTest {
         final CountDownLatch waiter = new CountDownLatch(1);
         final AtomicReference<Throwable> error = new AtomicReference<>();
         final AtomicReference<ObjectId> id = new AtomicReference<>();
+        final AtomicReference<BsonDocument> update = new AtomicReference<>();
 
         new OpLogParser(new TestOpLogHandler(error, waiter) {
             @Override
-            public void onUpdate(ObjectId updatedObject) {
+            public void onUpdate(ObjectId updatedObject, BsonDocument updateDocument) {
                 id.set(updatedObject);
+                update.set(updateDocument);
                 waiter.countDown();
             }
         }).emit(UPDATE);
@@ -87,6 +90,7 @@ public class OpLogParserTest {
             throw realError;
 
         Assert.assertEquals(ID, id.get().toHexString());
+        Assert.assertEquals("junit", update.get().getString("hello").getValue());
     }
 
     @Test
@@ -111,6 +115,32 @@ public class OpLogParserTest {
         Assert.assertEquals(ID, id.get().toHexString());
     }
 
+    @Test
+    public void testDropOwnUpdate() throws Throwable {
+        final CountDownLatch waiter = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        WriteOrigin origin = new WriteOrigin();
+        BsonDocument own = UPDATE.clone();
+        own.put("o", origin.stamp(new BsonDocument("$set", new BsonDocument("hello", new BsonString("junit")))));
+        BsonDocument foreign = UPDATE.clone();
+        foreign.put("o", new WriteOrigin().stamp(new BsonDocument("$set", new BsonDocument("hello", new BsonString("junit")))));
+
+        OpLogParser parser = new OpLogParser(new TestOpLogHandler(error, waiter) {
+            @Override
+            public void onUpdate(ObjectId updatedObject, BsonDocument updateDocument) {
+                waiter.countDown();
+            }
+        }, origin);
+        parser.emit(own);
+        Assert.assertEquals(1, waiter.getCount());
+        parser.emit(foreign);
+        ConcurrentUtils.safeAwait(waiter);
+
+        Throwable realError = error.get();
+        if (realError != null)
+            throw realError;
+    }
+
     private static abstract class TestOpLogHandler implements OpLogHandler {
 
         private final AtomicReference<Throwable> error;
@@ -128,7 +158,7 @@ public class OpLogParserTest {
         }
 
         @Override
-        public void onUpdate(ObjectId updatedDocument) {
+        public void onUpdate(ObjectId updatedDocument, BsonDocument update) {
             error.set(new UnsupportedOperationException("Doesn't expect update."));
             waiter.countDown();
         }
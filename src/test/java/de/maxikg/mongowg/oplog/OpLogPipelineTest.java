@@ -0,0 +1,166 @@
+package de.maxikg.mongowg.oplog;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import de.maxikg.mongowg.RegionStorageAdapter;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OpLogPipelineTest {
+
+    @Test
+    public void testOrderPerRegion() throws InterruptedException {
+        final ObjectId first = new ObjectId();
+        final ObjectId second = new ObjectId();
+        final List<String> events = Collections.synchronizedList(Lists.<String>newArrayList());
+        final OpLogPipeline pipeline = new OpLogPipeline(new RecordingHandler(events), 4, 16);
+        pipeline.start(new TestSource() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    pipeline.onUpdate(first, new BsonDocument());
+                    pipeline.onUpdate(second, new BsonDocument());
+                }
+                pipeline.onDelete(first);
+            }
+        });
+        pipeline.stop();
+
+        Assert.assertEquals(201, events.size());
+        List<String> firstEvents = Lists.newArrayList();
+        for (String event : events) {
+            if (event.endsWith(first.toHexString()))
+                firstEvents.add(event);
+        }
+        Assert.assertEquals(101, firstEvents.size());
+        Assert.assertEquals("d " + first.toHexString(), firstEvents.get(100));
+    }
+
+    @Test
+    public void testOrderOfRecreatedRegion() throws InterruptedException {
+        final ObjectId oldId = new ObjectId();
+        final ObjectId newId = new ObjectId();
+        final RegionStorageAdapter.RegionPath path = RegionStorageAdapter.RegionPath.create("world", "plot");
+        final List<String> events = Collections.synchronizedList(Lists.<String>newArrayList());
+        Function<ObjectId, RegionStorageAdapter.RegionPath> resolver = Functions.forMap(ImmutableMap.of(oldId, path), null);
+        // Delay deletes, so they would be overtaken by creates on any other worker.
+        final OpLogPipeline pipeline = new OpLogPipeline(new RecordingHandler(events) {
+            @Override
+            public void onDelete(ObjectId deletedObject) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onDelete(deletedObject);
+            }
+        }, resolver, 8, 16);
+        pipeline.start(new TestSource() {
+            @Override
+            public void run() {
+                pipeline.onDelete(oldId);
+                pipeline.onCreate(new BsonDocument("_id", new BsonObjectId(newId))
+                        .append("world", new BsonString("world"))
+                        .append("name", new BsonString("plot")));
+                pipeline.onUpdate(newId, new BsonDocument());
+            }
+        });
+        pipeline.stop();
+
+        Assert.assertEquals(ImmutableList.of("d " + oldId.toHexString(), "i " + newId.toHexString(), "u " + newId.toHexString()), events);
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch submitted = new CountDownLatch(3);
+        final List<String> events = Collections.synchronizedList(Lists.<String>newArrayList());
+        final OpLogPipeline pipeline = new OpLogPipeline(new RecordingHandler(events) {
+            @Override
+            public void onUpdate(ObjectId updatedObject, BsonDocument update) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onUpdate(updatedObject, update);
+            }
+        }, 1, 1);
+        final ObjectId id = new ObjectId();
+        pipeline.start(new TestSource() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    pipeline.onUpdate(id, new BsonDocument());
+                    submitted.countDown();
+                }
+            }
+        });
+
+        // One event is processed, one is queued, the third one blocks the tailer.
+        Assert.assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, submitted.getCount());
+        blocked.countDown();
+        Assert.assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        pipeline.stop();
+        Assert.assertEquals(3, events.size());
+    }
+
+    private static abstract class TestSource implements OpLogSource {
+
+        @Override
+        public long getReconnectCount() {
+            return 0;
+        }
+
+        @Override
+        public boolean awaitReady(long timeout, TimeUnit unit) {
+            return true;
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    private static class RecordingHandler implements OpLogHandler {
+
+        private final List<String> events;
+
+        public RecordingHandler(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onCreate(BsonDocument createdDocument) {
+            events.add("i " + createdDocument.getObjectId("_id").getValue().toHexString());
+        }
+
+        @Override
+        public void onUpdate(ObjectId updatedObject, BsonDocument update) {
+            events.add("u " + updatedObject.toHexString());
+        }
+
+        @Override
+        public void onDelete(ObjectId deletedObject) {
+            events.add("d " + deletedObject.toHexString());
+        }
+
+        @Override
+        public void onException(Throwable throwable) {
+            events.add("e " + throwable);
+        }
+    }
+}
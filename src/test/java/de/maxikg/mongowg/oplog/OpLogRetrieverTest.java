@@ -0,0 +1,83 @@
+package de.maxikg.mongowg.oplog;
+
+import com.mongodb.MongoException;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OpLogRetrieverTest {
+
+    @Test
+    public void testFailingWindowLookup() {
+        final AtomicInteger lookups = new AtomicInteger();
+        final AtomicInteger opens = new AtomicInteger();
+        final AtomicReference<OpLogRetriever> retriever = new AtomicReference<>();
+        // 1st lookup: latest timestamp on start, 2nd: oldest timestamp after the cursor failed, 3rd: retry of it
+        final FindIterable<?> lookup = proxy(FindIterable.class, new InvocationHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (!"first".equals(method.getName()))
+                    return proxy;
+                SingleResultCallback<BsonDocument> callback = (SingleResultCallback<BsonDocument>) args[0];
+                int count = lookups.incrementAndGet();
+                if (count == 2)
+                    callback.onResult(null, new MongoException("Server is unreachable."));
+                else
+                    callback.onResult(new BsonDocument("ts", new BsonTimestamp(count == 1 ? 100 : 50, 1)), null);
+                return null;
+            }
+        });
+        final FindIterable<?> tail = proxy(FindIterable.class, new InvocationHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (!"batchCursor".equals(method.getName()))
+                    return proxy;
+                // The cursor is reopened after the window was checked successfully.
+                if (opens.incrementAndGet() == 2)
+                    retriever.get().stop();
+                ((SingleResultCallback<Object>) args[0]).onResult(null, new MongoException("Server is unreachable."));
+                return null;
+            }
+        });
+        MongoCollection<BsonDocument> oplog = proxy(MongoCollection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return args == null ? lookup : tail;
+            }
+        });
+        OpLogSink sink = new OpLogSink() {
+            @Override
+            public void emit(BsonDocument document) {
+                Assert.fail("No entry expected.");
+            }
+        };
+        retriever.set(new OpLogRetriever(oplog, sink, "test.regions"));
+
+        try {
+            retriever.get().run();
+        } finally {
+            Thread.interrupted();
+        }
+
+        Assert.assertEquals(3, lookups.get());
+        Assert.assertEquals(2, opens.get());
+        Assert.assertEquals(2, retriever.get().getReconnectCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<?> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(OpLogRetrieverTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+}
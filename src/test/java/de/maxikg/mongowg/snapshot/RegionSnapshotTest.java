@@ -0,0 +1,76 @@
+package de.maxikg.mongowg.snapshot;
+
+import com.google.common.collect.ImmutableList;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class RegionSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        BsonDocument first = new BsonDocument("_id", new BsonObjectId(new ObjectId()))
+                .append("name", new BsonString("first"))
+                .append("world", new BsonString("world"));
+        BsonDocument second = new BsonDocument("_id", new BsonObjectId(new ObjectId()))
+                .append("name", new BsonString("second"))
+                .append("world", new BsonString("world"))
+                .append("priority", new BsonInt32(42));
+        BsonTimestamp timestamp = new BsonTimestamp(1447977600, 7);
+        File file = new File(folder.getRoot(), "world.snapshot");
+
+        new RegionSnapshot(timestamp, ImmutableList.of(raw(first), raw(second))).write(file);
+        RegionSnapshot snapshot = RegionSnapshot.read(file);
+
+        Assert.assertEquals(timestamp.getTime(), snapshot.getTimestamp().getTime());
+        Assert.assertEquals(timestamp.getInc(), snapshot.getTimestamp().getInc());
+        Assert.assertEquals(2, snapshot.getDocuments().size());
+        Assert.assertEquals(first, snapshot.getDocuments().get(0));
+        Assert.assertEquals(second, snapshot.getDocuments().get(1));
+        Assert.assertFalse(new File(folder.getRoot(), "world.snapshot.tmp").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        BsonDocument document = new BsonDocument("_id", new BsonObjectId(new ObjectId())).append("name", new BsonString("region"));
+        File file = new File(folder.getRoot(), "world.snapshot");
+        new RegionSnapshot(new BsonTimestamp(1447977600, 0), ImmutableList.of(raw(document))).write(file);
+
+        byte[] content = Files.readAllBytes(file.toPath());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(Arrays.copyOf(content, content.length - 3));
+        }
+        RegionSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+        File file = folder.newFile("world.snapshot");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("no snapshot at all".getBytes("UTF-8"));
+        }
+        RegionSnapshot.read(file);
+    }
+
+    private static RawBsonDocument raw(BsonDocument document) {
+        return new RawBsonDocument(document, new BsonDocumentCodec());
+    }
+}
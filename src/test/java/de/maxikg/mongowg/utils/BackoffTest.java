@@ -0,0 +1,19 @@
+package de.maxikg.mongowg.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BackoffTest {
+
+    @Test
+    public void testBounds() {
+        Backoff backoff = new Backoff(100, 400);
+        long[] maxima = {100, 200, 400, 400};
+        for (long max : maxima) {
+            long delay = backoff.nextDelay();
+            Assert.assertTrue(delay >= max / 2 && delay <= max);
+        }
+        backoff.reset();
+        Assert.assertTrue(backoff.nextDelay() <= 100);
+    }
+}
@@ -0,0 +1,140 @@
+package de.maxikg.mongowg.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.BlockVector2D;
+import com.sk89q.worldguard.protection.flags.DefaultFlag;
+import com.sk89q.worldguard.protection.flags.StateFlag;
+import com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion;
+import com.sk89q.worldguard.protection.regions.ProtectedPolygonalRegion;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import de.maxikg.mongowg.codec.BlockVector2DCodec;
+import de.maxikg.mongowg.codec.BlockVectorCodec;
+import de.maxikg.mongowg.codec.DefaultDomainCodec;
+import de.maxikg.mongowg.codec.ProcessingProtectedRegionCodec;
+import de.maxikg.mongowg.model.ProcessingProtectedRegion;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DocumentCodecProvider;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.ValueCodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class UpdateUtilsTest {
+
+    private ProcessingProtectedRegionCodec codec;
+
+    @Before
+    public void prepare() {
+        CodecRegistry codecRegistry = CodecRegistries.fromRegistries(
+                CodecRegistries.fromProviders(new ValueCodecProvider(), new DocumentCodecProvider()),
+                CodecRegistries.fromCodecs(new BlockVector2DCodec(), new BlockVectorCodec(), new DefaultDomainCodec())
+        );
+        codec = new ProcessingProtectedRegionCodec(codecRegistry);
+    }
+
+    @Test
+    public void testUnchanged() {
+        ProtectedRegion region = new ProtectedCuboidRegion("cuboid", new BlockVector(4, 4, 4), new BlockVector(42, 42, 42));
+        region.setFlag(DefaultFlag.BUILD, StateFlag.State.ALLOW);
+
+        Assert.assertTrue(UpdateUtils.diff(encode(region), encode(region)).isEmpty());
+    }
+
+    @Test
+    public void testFlagsAndDomains() {
+        ProtectedRegion region = new ProtectedPolygonalRegion("polygon", ImmutableList.of(new BlockVector2D(0, 0), new BlockVector2D(0, 4), new BlockVector2D(4, 4), new BlockVector2D(4, 0)), 0, 64);
+        region.setFlag(DefaultFlag.BUILD, StateFlag.State.ALLOW);
+        region.setFlag(DefaultFlag.GREET_MESSAGE, "Hello");
+        BsonDocument before = encode(region);
+
+        region.setFlag(DefaultFlag.BUILD, StateFlag.State.DENY);
+        region.setFlag(DefaultFlag.GREET_MESSAGE, null);
+        region.setFlag(DefaultFlag.FAREWELL_MESSAGE, "Bye");
+        region.getMembers().addPlayer(UUID.randomUUID());
+        region.setPriority(42);
+        BsonDocument after = encode(region);
+
+        BsonDocument update = UpdateUtils.diff(before, after);
+        BsonDocument set = update.getDocument("$set");
+        BsonDocument unset = update.getDocument("$unset");
+        Assert.assertTrue(set.containsKey("flags." + DefaultFlag.BUILD.getName()));
+        Assert.assertTrue(set.containsKey("flags." + DefaultFlag.FAREWELL_MESSAGE.getName()));
+        Assert.assertTrue(set.containsKey("members"));
+        Assert.assertTrue(set.containsKey("priority"));
+        Assert.assertFalse(set.containsKey("points"));
+        Assert.assertFalse(set.containsKey("owners"));
+        Assert.assertTrue(unset.containsKey("flags." + DefaultFlag.GREET_MESSAGE.getName()));
+        Assert.assertEquals(after, UpdateUtils.apply(before, update));
+    }
+
+    @Test
+    public void testGeometryAndRemovedFields() {
+        ProtectedRegion region = new ProtectedCuboidRegion("cuboid", new BlockVector(4, 4, 4), new BlockVector(42, 42, 42));
+        region.setFlag(DefaultFlag.BUILD, StateFlag.State.ALLOW);
+        region.setPriority(42);
+        BsonDocument before = encode(region);
+
+        ProtectedRegion resized = new ProtectedCuboidRegion("cuboid", new BlockVector(0, 0, 0), new BlockVector(42, 42, 42));
+        BsonDocument after = encode(resized);
+
+        BsonDocument update = UpdateUtils.diff(before, after);
+        Assert.assertTrue(update.getDocument("$set").containsKey("min"));
+        Assert.assertFalse(update.getDocument("$set").containsKey("max"));
+        Assert.assertTrue(update.getDocument("$unset").containsKey("flags"));
+        Assert.assertTrue(update.getDocument("$unset").containsKey("priority"));
+        Assert.assertEquals(after, UpdateUtils.apply(before, update));
+    }
+
+    @Test
+    public void testSetOnInsert() {
+        ProtectedRegion region = new ProtectedCuboidRegion("cuboid", new BlockVector(4, 4, 4), new BlockVector(42, 42, 42));
+        region.setFlag(DefaultFlag.BUILD, StateFlag.State.ALLOW);
+        region.setFlag(DefaultFlag.GREET_MESSAGE, "Hello");
+        BsonDocument before = encode(region);
+
+        region.setFlag(DefaultFlag.BUILD, StateFlag.State.DENY);
+        BsonDocument after = encode(region);
+
+        BsonDocument update = UpdateUtils.addSetOnInsert(UpdateUtils.diff(before, after), after);
+        BsonDocument inserted = new BsonDocument("name", new BsonString("cuboid")).append("world", new BsonString("world"));
+        inserted = UpdateUtils.apply(inserted, new BsonDocument("$set", update.getDocument("$setOnInsert")));
+        inserted = UpdateUtils.apply(inserted, new BsonDocument("$set", update.getDocument("$set")));
+        Assert.assertEquals(after, inserted);
+    }
+
+    @Test
+    public void testApplyOplogUpdate() {
+        ProtectedRegion region = new ProtectedCuboidRegion("cuboid", new BlockVector(4, 4, 4), new BlockVector(42, 42, 42));
+        region.setFlag(DefaultFlag.BUILD, StateFlag.State.ALLOW);
+        BsonDocument before = encode(region);
+
+        region.setPriority(7);
+        BsonDocument after = encode(region);
+
+        BsonDocument update = UpdateUtils.diff(before, after).append("$v", new BsonInt32(1));
+        Assert.assertTrue(UpdateUtils.isUpdate(update));
+        Assert.assertEquals(after, UpdateUtils.apply(new RawBsonDocument(before, new BsonDocumentCodec()), update));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApplyUnsupported() {
+        UpdateUtils.apply(new BsonDocument(), new BsonDocument("$inc", new BsonDocument("priority", new BsonInt32(1))));
+    }
+
+    private BsonDocument encode(ProtectedRegion region) {
+        BsonDocumentWriter writer = new BsonDocumentWriter(new BsonDocument());
+        codec.encode(writer, new ProcessingProtectedRegion(region, "world"), EncoderContext.builder().build());
+        return writer.getDocument();
+    }
+}